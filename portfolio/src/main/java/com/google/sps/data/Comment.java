@@ -14,6 +14,7 @@
 
 package com.google.sps.data;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /** An item on a todo list. */
@@ -25,13 +26,34 @@ public final class Comment {
   private final String imageUrl;
   private final List<String> imageLabels;
   private final long timestamp;
+  // Identifies this comment's place in its thread; see CommentSchema for the format.
+  private final String path;
+  // Only set once a reply is added, so comments without replies serialize as before.
+  private List<Comment> replies;
 
-  public Comment(long id, String comment, String username, String imageUrl, List<String> imageLabels, long timestamp) {
+  public Comment(long id, String comment, String username, String imageUrl,
+      List<String> imageLabels, long timestamp, String path) {
     this.id = id;
     this.comment = comment;
     this.username = username;
     this.imageUrl = imageUrl;
     this.imageLabels = imageLabels;
     this.timestamp = timestamp;
+    this.path = path;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public void addReply(Comment reply) {
+    if (replies == null) {
+      replies = new ArrayList<>();
+    }
+    replies.add(reply);
   }
 }
\ No newline at end of file
@@ -0,0 +1,152 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Packs a time-ordered chunk of comment entities into a single archive entity. The comments are
+ * stored as gzipped JSON in one unindexed blob property, so reading a chunk of old comments costs
+ * a single entity fetch instead of one row per comment.
+ */
+public final class CommentArchive {
+
+  public static final String KIND = "commentArchive";
+  public static final int COMMENTS_PER_ARCHIVE = 500;
+  // Entities are limited to 1 MB, and the key and other properties need some of that.
+  public static final int MAX_DATA_BYTES = 900 * 1024;
+
+  public static final String START_TIMESTAMP = "startTimestamp";
+  public static final String END_TIMESTAMP = "endTimestamp";
+  public static final String COUNT = "count";
+  public static final String DATA = "data";
+
+  private static final Gson GSON = new Gson();
+  private static final Type ROWS_TYPE = new TypeToken<List<CommentRecord>>() {}.getType();
+
+  private CommentArchive() {
+    // Disallow instances.
+  }
+
+  /**
+   * Builds the archive entity for {@code comments}, which must be sorted by ascending timestamp.
+   * The key is derived from the oldest comment so that re-running an interrupted compaction over
+   * the same comments overwrites the same archive instead of creating a duplicate.
+   */
+  public static Entity toArchiveEntity(List<Entity> comments) {
+    if (comments.isEmpty()) {
+      throw new IllegalArgumentException("comments cannot be empty");
+    }
+
+    Entity first = comments.get(0);
+    Entity last = comments.get(comments.size() - 1);
+    long startTimestamp = CommentSchema.getTimestamp(first);
+    long endTimestamp = CommentSchema.getTimestamp(last);
+
+    List<CommentRecord> rows = new ArrayList<>(comments.size());
+    for (Entity comment : comments) {
+      rows.add(CommentRecord.fromEntity(comment));
+    }
+
+    Entity archive = new Entity(archiveKey(startTimestamp, first.getKey().getId()));
+    archive.setProperty(START_TIMESTAMP, startTimestamp);
+    archive.setProperty(END_TIMESTAMP, endTimestamp);
+    archive.setUnindexedProperty(COUNT, (long) rows.size());
+    archive.setUnindexedProperty(DATA, encode(rows));
+    return archive;
+  }
+
+  /**
+   * Returns whether the archive's data is small enough for the archive to be stored.
+   */
+  public static boolean fits(Entity archive) {
+    return ((Blob) archive.getProperty(DATA)).getBytes().length <= MAX_DATA_BYTES;
+  }
+
+  /**
+   * Returns the comments stored in an archive entity, newest first to match the ordering of the
+   * live comments feed. Replies are nested under their parent when it is in the same archive, as
+   * in a live thread. Replies whose parent was archived in an older chunk, or is still live, are
+   * listed at the top level so they stay reachable.
+   */
+  public static List<Comment> readComments(Entity archive) {
+    List<CommentRecord> rows = decode((Blob) archive.getProperty(DATA));
+    Map<Long, Comment> commentsById = new HashMap<>();
+    List<Comment> comments = new ArrayList<>();
+    // Rows are oldest first and a reply is always newer than its parent, so parents come first.
+    for (CommentRecord row : rows) {
+      Comment comment = row.toComment();
+      commentsById.put(comment.getId(), comment);
+      Comment parent = commentsById.get(CommentSchema.getParentId(comment.getPath()));
+      if (parent != null) {
+        parent.addReply(comment);
+      } else {
+        comments.add(comment);
+      }
+    }
+    Collections.reverse(comments);
+    return comments;
+  }
+
+  /**
+   * Zero-pads the timestamp so that archive keys sort in time order.
+   */
+  private static Key archiveKey(long startTimestamp, long firstCommentId) {
+    return KeyFactory.createKey(KIND, String.format("%013d-%d", startTimestamp, firstCommentId));
+  }
+
+  private static Blob encode(List<CommentRecord> rows) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (Writer writer =
+        new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+      GSON.toJson(rows, ROWS_TYPE, writer);
+    } catch (IOException e) {
+      // Writing to an in-memory stream cannot fail.
+      throw new UncheckedIOException(e);
+    }
+    return new Blob(bytes.toByteArray());
+  }
+
+  private static List<CommentRecord> decode(Blob blob) {
+    try (Reader reader = new InputStreamReader(
+        new GZIPInputStream(new ByteArrayInputStream(blob.getBytes())), StandardCharsets.UTF_8)) {
+      return GSON.fromJson(reader, ROWS_TYPE);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Corrupt comment archive", e);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A comment with every stored property, independent of the entity schema. This is the form in
+ * which comments are archived and exported, so it must stay readable by Gson across releases.
+ */
+public final class CommentRecord {
+  private long id;
+  private String comment;
+  private String email;
+  private String username;
+  private String imageUrl;
+  private List<String> imageLabels;
+  private long timestamp;
+  private String path;
+
+  public static CommentRecord fromEntity(Entity entity) {
+    CommentRecord record = new CommentRecord();
+    record.id = entity.getKey().getId();
+    record.comment = CommentSchema.getText(entity);
+    record.email = CommentSchema.getEmail(entity);
+    record.username = CommentSchema.getUsername(entity);
+    record.imageUrl = CommentSchema.getImageUrl(entity);
+    record.imageLabels = CommentSchema.getImageLabels(entity);
+    record.timestamp = CommentSchema.getTimestamp(entity);
+    record.path = CommentSchema.getPath(entity);
+    return record;
+  }
+
+  /**
+   * Recreates the comment entity under its original id, so importing the same record twice
+   * overwrites rather than duplicates it.
+   */
+  public Entity toEntity() {
+    if (id == 0 || path == null) {
+      throw new IllegalArgumentException("Comment record is missing its id or path");
+    }
+    List<String> labels = imageLabels == null ? new ArrayList<String>() : imageLabels;
+    return CommentSchema.restoreEntity(KeyFactory.createKey(CommentSchema.KIND, id), path,
+        comment, email, username, imageUrl, labels, timestamp);
+  }
+
+  public Comment toComment() {
+    String displayName = (username == null || username.isEmpty()) ? "Anonymous User" : username;
+    List<String> labels = (imageLabels == null || imageLabels.isEmpty()) ? null : imageLabels;
+    return new Comment(id, comment, displayName, imageUrl, labels, timestamp, path);
+  }
+}
@@ -0,0 +1,296 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.Filter;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Text;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes {@code comment} entities. All code that touches comment properties goes
+ * through this class, so the stored layout can change without callers noticing.
+ *
+ * <p>Version 1 (no {@code v} property) stored every field as an indexed property under its full
+ * name, with the image labels as a list of strings. Version 2 only indexes {@code timestamp} and
+ * {@code path}, the properties comments are queried and sorted by. Everything else is unindexed
+ * under a one-letter name, the text is stored as {@link Text} so long comments fit, and the
+ * labels are stored as ids from the {@link LabelDictionary}.
+ *
+ * <p>Replies are threaded with a materialized path: the {@code path} of a comment is its parent's
+ * path followed by {@code "/"} and a fixed-width segment built from its own timestamp and id. A
+ * comment's whole subtree is therefore one range query on {@code path}, and sorting by path lists
+ * the subtree depth first with siblings in the order they were posted. Comments written before
+ * threading have no stored path and are treated as top-level comments. A reply keeps its path when
+ * its parent is archived, so it stays readable as the root of its own remaining subtree.
+ *
+ * <p>Comments with image labels also store the {@link MinHash} signature of their labels.
+ *
+ * <p>Version 1 entities are still readable. The label backfill job upgrades them in the background
+ * by passing entities for which {@link #needsMigration} is true through {@link #migrate} and
+ * writing them back one at a time in a transaction.
+ */
+public final class CommentSchema {
+
+  public static final String KIND = "comment";
+  public static final int VERSION = 2;
+
+  // The only indexed properties. The timestamp's name is unchanged from version 1 so that queries
+  // sorted by it see old and new entities alike while the migration is in progress.
+  public static final String TIMESTAMP = "timestamp";
+  public static final String PATH = "path";
+
+  // Indexed strings are limited to 1500 bytes, so deeper replies are attached one level up.
+  public static final int MAX_DEPTH = 32;
+  private static final String PATH_SEPARATOR = "/";
+
+  private static final String SCHEMA_VERSION = "v";
+  private static final String TEXT = "c";
+  private static final String EMAIL = "e";
+  private static final String USERNAME = "u";
+  private static final String IMAGE_URL = "i";
+  private static final String LABEL_IDS = "l";
+  private static final String MIN_HASH = "m";
+
+  private static final String V1_TEXT = "comment";
+  private static final String V1_EMAIL = "email";
+  private static final String V1_USERNAME = "username";
+  private static final String V1_IMAGE_URL = "imageUrl";
+  private static final String V1_IMAGE_LABELS = "imageLabels";
+
+  private CommentSchema() {
+    // Disallow instances.
+  }
+
+  /**
+   * Creates a new comment entity in the current schema version. The key has to be allocated up
+   * front because the comment's id is part of its path.
+   *
+   * @param parentPath the path of the comment being replied to, or null for a top-level comment
+   * @throws java.util.ConcurrentModificationException if new labels couldn't be added to the
+   *     {@link LabelDictionary}
+   */
+  public static Entity newEntity(Key key, String parentPath, String text, String email,
+      String username, String imageUrl, List<String> imageLabels, long timestamp) {
+    String path = segment(timestamp, key.getId());
+    if (parentPath != null) {
+      if (getDepth(parentPath) >= MAX_DEPTH) {
+        parentPath = parentPath.substring(0, parentPath.lastIndexOf(PATH_SEPARATOR));
+      }
+      path = parentPath + PATH_SEPARATOR + path;
+    }
+
+    return restoreEntity(key, path, text, email, username, imageUrl, imageLabels, timestamp);
+  }
+
+  /**
+   * Recreates a comment entity whose key and path are already known, e.g. from an export.
+   */
+  public static Entity restoreEntity(Key key, String path, String text, String email,
+      String username, String imageUrl, List<String> imageLabels, long timestamp) {
+    Entity entity = new Entity(key);
+    write(entity, text, email, username, imageUrl, imageLabels, timestamp);
+    entity.setProperty(PATH, path);
+    return entity;
+  }
+
+  /**
+   * Returns the comment's path. Comments written before threading get the path they would have
+   * had as a top-level comment; {@link #migrate} stores it.
+   */
+  public static String getPath(Entity entity) {
+    String path = (String) entity.getProperty(PATH);
+    return path == null ? segment(getTimestamp(entity), entity.getKey().getId()) : path;
+  }
+
+  public static boolean isReply(Entity entity) {
+    return getDepth(getPath(entity)) > 0;
+  }
+
+  /**
+   * Returns the id of the comment this path replies to, or 0 for a top-level comment.
+   */
+  public static long getParentId(String path) {
+    int end = path.lastIndexOf(PATH_SEPARATOR);
+    if (end < 0) {
+      return 0;
+    }
+    return Long.parseUnsignedLong(path.substring(end - 16, end), 16);
+  }
+
+  /**
+   * Returns a filter matching the comment at {@code path} and all of its replies, at any depth.
+   */
+  public static Filter subtreeFilter(String path) {
+    // Every descendant's path is this path followed by the separator, and '/' sorts before the
+    // hex digits used in segments, so this range holds exactly the subtree.
+    return CompositeFilterOperator.and(
+        new FilterPredicate(PATH, FilterOperator.GREATER_THAN_OR_EQUAL, path),
+        new FilterPredicate(PATH, FilterOperator.LESS_THAN_OR_EQUAL, path + PATH_SEPARATOR + "~"));
+  }
+
+  private static int getDepth(String path) {
+    int depth = 0;
+    for (int i = path.indexOf(PATH_SEPARATOR); i >= 0; i = path.indexOf(PATH_SEPARATOR, i + 1)) {
+      depth++;
+    }
+    return depth;
+  }
+
+  /**
+   * The timestamp comes first so that siblings sort chronologically. Both parts are fixed width
+   * hex so that string order matches numeric order.
+   */
+  private static String segment(long timestamp, long id) {
+    return String.format("%012x%016x", timestamp, id);
+  }
+
+  public static boolean needsMigration(Entity entity) {
+    return getVersion(entity) < VERSION || !entity.hasProperty(PATH);
+  }
+
+  /**
+   * Rewrites an entity in place to the current schema version, keeping its key.
+   */
+  public static void migrate(Entity entity) {
+    String text = getText(entity);
+    String email = getEmail(entity);
+    String username = getUsername(entity);
+    String imageUrl = getImageUrl(entity);
+    List<String> imageLabels = getImageLabels(entity);
+    long timestamp = getTimestamp(entity);
+    String path = getPath(entity);
+
+    for (String property : new ArrayList<>(entity.getProperties().keySet())) {
+      entity.removeProperty(property);
+    }
+    write(entity, text, email, username, imageUrl, imageLabels, timestamp);
+    entity.setProperty(PATH, path);
+  }
+
+  /**
+   * Converts a comment entity of any schema version into the {@link Comment} served to clients.
+   */
+  public static Comment toComment(Entity entity) {
+    String username = getUsername(entity);
+    if (username == null || username.isEmpty()) {
+      username = "Anonymous User";
+    }
+    // Clients expect comments without labels to have no label list at all.
+    List<String> imageLabels = getImageLabels(entity);
+    return new Comment(entity.getKey().getId(), getText(entity), username, getImageUrl(entity),
+        imageLabels.isEmpty() ? null : imageLabels, getTimestamp(entity), getPath(entity));
+  }
+
+  public static String getText(Entity entity) {
+    if (getVersion(entity) == 1) {
+      return (String) entity.getProperty(V1_TEXT);
+    }
+    Text text = (Text) entity.getProperty(TEXT);
+    return text == null ? null : text.getValue();
+  }
+
+  public static String getEmail(Entity entity) {
+    return (String) entity.getProperty(getVersion(entity) == 1 ? V1_EMAIL : EMAIL);
+  }
+
+  public static String getUsername(Entity entity) {
+    return (String) entity.getProperty(getVersion(entity) == 1 ? V1_USERNAME : USERNAME);
+  }
+
+  public static String getImageUrl(Entity entity) {
+    return (String) entity.getProperty(getVersion(entity) == 1 ? V1_IMAGE_URL : IMAGE_URL);
+  }
+
+  /**
+   * Returns the image labels, or an empty list if the comment has none.
+   */
+  @SuppressWarnings("unchecked")
+  public static List<String> getImageLabels(Entity entity) {
+    if (getVersion(entity) == 1) {
+      List<String> imageLabels = (List<String>) entity.getProperty(V1_IMAGE_LABELS);
+      return imageLabels == null ? new ArrayList<String>() : imageLabels;
+    }
+    List<Long> labelIds = (List<Long>) entity.getProperty(LABEL_IDS);
+    if (labelIds == null) {
+      return new ArrayList<String>();
+    }
+    return LabelDictionary.getInstance().decode(labelIds);
+  }
+
+  /**
+   * Replaces the image labels of an entity that is already in the current schema version.
+   */
+  public static void setImageLabels(Entity entity, List<String> imageLabels) {
+    if (needsMigration(entity)) {
+      migrate(entity);
+    }
+    writeImageLabels(entity, imageLabels);
+  }
+
+  /**
+   * Returns the MinHash signature of the image labels, or null if the comment has no labels.
+   */
+  public static int[] getMinHash(Entity entity) {
+    Blob minHash = (Blob) entity.getProperty(MIN_HASH);
+    if (minHash != null) {
+      return MinHash.fromBytes(minHash.getBytes());
+    }
+    List<String> imageLabels = getImageLabels(entity);
+    return imageLabels.isEmpty() ? null : MinHash.signature(imageLabels);
+  }
+
+  public static long getTimestamp(Entity entity) {
+    return (long) entity.getProperty(TIMESTAMP);
+  }
+
+  private static int getVersion(Entity entity) {
+    Long version = (Long) entity.getProperty(SCHEMA_VERSION);
+    return version == null ? 1 : version.intValue();
+  }
+
+  private static void write(Entity entity, String text, String email, String username,
+      String imageUrl, List<String> imageLabels, long timestamp) {
+    entity.setUnindexedProperty(SCHEMA_VERSION, (long) VERSION);
+    entity.setUnindexedProperty(TEXT, text == null ? null : new Text(text));
+    entity.setUnindexedProperty(EMAIL, email);
+    entity.setUnindexedProperty(USERNAME, username);
+    entity.setUnindexedProperty(IMAGE_URL, imageUrl);
+    if (!imageLabels.isEmpty()) {
+      writeImageLabels(entity, imageLabels);
+    }
+    entity.setProperty(TIMESTAMP, timestamp);
+  }
+
+  /**
+   * The MinHash signature is computed once here, at write time, so that the similar comments
+   * index can be rebuilt from stored signatures.
+   */
+  private static void writeImageLabels(Entity entity, List<String> imageLabels) {
+    entity.setUnindexedProperty(LABEL_IDS, LabelDictionary.getInstance().encode(imageLabels));
+    if (imageLabels.isEmpty()) {
+      entity.removeProperty(MIN_HASH);
+    } else {
+      int[] signature = MinHash.signature(imageLabels);
+      entity.setUnindexedProperty(MIN_HASH, new Blob(MinHash.toBytes(signature)));
+    }
+  }
+}
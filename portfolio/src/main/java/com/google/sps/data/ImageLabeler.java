@@ -0,0 +1,328 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.cloud.vision.v1.AnnotateImageRequest;
+import com.google.cloud.vision.v1.AnnotateImageResponse;
+import com.google.cloud.vision.v1.BatchAnnotateImagesResponse;
+import com.google.cloud.vision.v1.Feature;
+import com.google.cloud.vision.v1.Image;
+import com.google.cloud.vision.v1.ImageAnnotatorClient;
+import com.google.cloud.vision.v1.ImageSource;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Labels images with the Google Cloud Vision API while protecting callers from a slow or failing
+ * Vision backend. Every call has a deadline, repeated failures trip a {@link CircuitBreaker}, and
+ * a hedged second request can be sent when the first one is slower than the recent p95 latency.
+ * Whenever labels cannot be produced in time the result is an empty list, so callers can store
+ * the comment without labels.
+ *
+ * <p>Settings are read from system properties, which can be set in appengine-web.xml.
+ */
+public final class ImageLabeler {
+
+  private static final double THRESHOLD_ACCURACY = 0.80;
+
+  private static final long CALL_TIMEOUT_MILLIS = Long.getLong("vision.timeoutMillis", 3000);
+  private static final boolean HEDGING_ENABLED = Boolean.getBoolean("vision.hedging");
+  private static final long MIN_HEDGE_DELAY_MILLIS = 50;
+  private static final int BREAKER_FAILURE_THRESHOLD =
+      Integer.getInteger("vision.breakerFailures", 5);
+  private static final long BREAKER_OPEN_MILLIS = Long.getLong("vision.breakerOpenMillis", 30000);
+  private static final int MAX_CONCURRENT_CALLS =
+      Integer.getInteger("vision.maxConcurrentCalls", 16);
+  // A batch of 16 images fetched by URL takes much longer than one uploaded image.
+  private static final long BACKFILL_CALL_TIMEOUT_MILLIS =
+      Long.getLong("vision.backfillTimeoutMillis", 30000);
+  private static final int BACKFILL_MAX_CONCURRENT_CALLS = 8;
+
+  private static final ImageLabeler INSTANCE = new ImageLabeler(
+      "vision-call", CALL_TIMEOUT_MILLIS, HEDGING_ENABLED, MAX_CONCURRENT_CALLS);
+  private static final ImageLabeler BACKFILL_INSTANCE = new ImageLabeler("vision-backfill-call",
+      BACKFILL_CALL_TIMEOUT_MILLIS, false, BACKFILL_MAX_CONCURRENT_CALLS);
+
+  private static ImageAnnotatorClient client;
+
+  private final Feature feature =
+      Feature.newBuilder().setType(Feature.Type.LABEL_DETECTION).build();
+  private final long callTimeoutMillis;
+  private final boolean hedgingEnabled;
+  private final CircuitBreaker breaker =
+      new CircuitBreaker(BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MILLIS);
+  private final LatencyTracker latencies;
+  // Calls run on this pool so that the caller's thread only ever waits up to the deadline. A
+  // SynchronousQueue means a saturated pool rejects immediately instead of queueing.
+  private final ThreadPoolExecutor executor;
+
+  private ImageLabeler(
+      String threadName, long callTimeoutMillis, boolean hedgingEnabled, int maxConcurrentCalls) {
+    this.callTimeoutMillis = callTimeoutMillis;
+    this.hedgingEnabled = hedgingEnabled;
+    this.latencies = new LatencyTracker(128, callTimeoutMillis);
+    this.executor = new ThreadPoolExecutor(
+        0, maxConcurrentCalls, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        runnable -> {
+          Thread thread = new Thread(runnable, threadName);
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /**
+   * Returns the labeler for live requests, with a short deadline.
+   */
+  public static ImageLabeler getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the labeler for background jobs. It has its own breaker, pool and a deadline sized
+   * for batches, so slow backfill batches can't trip the breaker that live requests go through.
+   */
+  public static ImageLabeler getBackfillInstance() {
+    return BACKFILL_INSTANCE;
+  }
+
+  /**
+   * Returns the labels for a single image, or an empty list if Vision failed, timed out or is
+   * currently tripped.
+   */
+  public List<String> getImageLabels(ByteString imgByteString) {
+    return getImageLabels(Arrays.asList(imgByteString)).get(0);
+  }
+
+  /**
+   * Labels several images with a single Vision request. The result has one entry per image, in
+   * the same order; an entry is empty if that image could not be labeled.
+   */
+  public List<List<String>> getImageLabels(List<ByteString> images) {
+    List<Image> requestImages = new ArrayList<>(images.size());
+    for (ByteString imgByteString : images) {
+      requestImages.add(Image.newBuilder().setContent(imgByteString).build());
+    }
+    return annotate(requestImages);
+  }
+
+  /**
+   * Like {@link #getImageLabels(List)}, but Vision fetches each image from its publicly served
+   * URL, so the caller doesn't need to download the bytes first.
+   */
+  public List<List<String>> getImageLabelsForUrls(List<String> imageUrls) {
+    List<List<String>> labels = tryGetImageLabelsForUrls(imageUrls);
+    return labels == null ? emptyLabels(imageUrls.size()) : labels;
+  }
+
+  /**
+   * Like {@link #getImageLabelsForUrls}, but returns null if the Vision call as a whole failed,
+   * timed out or was short-circuited, so that background jobs can tell a failure apart from
+   * images without confident labels and retry them later.
+   */
+  public List<List<String>> tryGetImageLabelsForUrls(List<String> imageUrls) {
+    List<Image> requestImages = new ArrayList<>(imageUrls.size());
+    for (String imageUrl : imageUrls) {
+      ImageSource source = ImageSource.newBuilder().setImageUri(imageUrl).build();
+      requestImages.add(Image.newBuilder().setSource(source).build());
+    }
+    return tryAnnotate(requestImages);
+  }
+
+  private List<List<String>> annotate(List<Image> images) {
+    List<List<String>> labels = tryAnnotate(images);
+    return labels == null ? emptyLabels(images.size()) : labels;
+  }
+
+  private List<List<String>> tryAnnotate(List<Image> images) {
+    List<AnnotateImageRequest> requests = new ArrayList<>(images.size());
+    for (Image image : images) {
+      requests.add(AnnotateImageRequest.newBuilder().addFeatures(feature).setImage(image).build());
+    }
+
+    BatchAnnotateImagesResponse batchResponse = annotateWithinDeadline(requests);
+    if (batchResponse == null) {
+      return null;
+    }
+    List<List<String>> labels = new ArrayList<>(images.size());
+    for (int i = 0; i < images.size(); i++) {
+      labels.add(toLabels(batchResponse.getResponses(i)));
+    }
+    return labels;
+  }
+
+  private static List<List<String>> emptyLabels(int count) {
+    List<List<String>> labels = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      labels.add(new ArrayList<String>());
+    }
+    return labels;
+  }
+
+  /**
+   * Returns whether calls are currently being short-circuited. Background jobs use this to back
+   * off instead of burning through their work while Vision is down.
+   */
+  public boolean isTripped() {
+    return breaker.isOpen();
+  }
+
+  /**
+   * Sends the request, hedging it if enabled, and waits at most {@code callTimeoutMillis}.
+   *
+   * @return the response, or null if the breaker is open or the call failed or timed out
+   */
+  private BatchAnnotateImagesResponse annotateWithinDeadline(List<AnnotateImageRequest> requests) {
+    if (!breaker.allowRequest()) {
+      return null;
+    }
+
+    long startNanos = System.nanoTime();
+    long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(callTimeoutMillis);
+    CompletionService<BatchAnnotateImagesResponse> completion =
+        new ExecutorCompletionService<>(executor);
+    Callable<BatchAnnotateImagesResponse> call = () -> getClient().batchAnnotateImages(requests);
+    List<Future<BatchAnnotateImagesResponse>> attempts = new ArrayList<>(2);
+
+    try {
+      attempts.add(completion.submit(call));
+
+      Future<BatchAnnotateImagesResponse> done = null;
+      if (hedgingEnabled) {
+        long hedgeDelayMillis = Math.max(MIN_HEDGE_DELAY_MILLIS, latencies.percentile(0.95));
+        done = completion.poll(
+            Math.min(hedgeDelayMillis, callTimeoutMillis), TimeUnit.MILLISECONDS);
+        if (done == null && System.nanoTime() < deadlineNanos) {
+          try {
+            attempts.add(completion.submit(call));
+          } catch (RejectedExecutionException e) {
+            // No spare capacity for a hedge; keep waiting on the original request.
+          }
+        }
+      }
+
+      // Take the first attempt to succeed. A failed attempt only fails the call once no other
+      // attempt is still outstanding.
+      int pending = attempts.size() - (done == null ? 0 : 1);
+      while (true) {
+        if (done != null) {
+          try {
+            BatchAnnotateImagesResponse response = done.get();
+            latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            breaker.recordSuccess();
+            return response;
+          } catch (ExecutionException e) {
+            if (pending == 0) {
+              throw e;
+            }
+          }
+        }
+        if (pending == 0) {
+          break;
+        }
+        long remainingNanos = deadlineNanos - System.nanoTime();
+        done = remainingNanos > 0 ? completion.poll(remainingNanos, TimeUnit.NANOSECONDS) : null;
+        if (done == null) {
+          break;
+        }
+        pending--;
+      }
+      System.err.println("Vision call timed out after " + callTimeoutMillis + "ms");
+    } catch (ExecutionException e) {
+      System.err.println("Error getting image labels: " + e.getCause());
+    } catch (RejectedExecutionException e) {
+      // The local pool is full, which says nothing about Vision, so neither the breaker nor the
+      // latencies hear about it.
+      System.err.println("Too many concurrent Vision calls, skipping image labels");
+      breaker.recordAborted();
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      for (Future<BatchAnnotateImagesResponse> attempt : attempts) {
+        attempt.cancel(true);
+      }
+    }
+
+    // A timeout counts as a failure too, so a hanging backend trips the breaker as well.
+    latencies.record(callTimeoutMillis);
+    breaker.recordFailure();
+    return null;
+  }
+
+  private List<String> toLabels(AnnotateImageResponse imageResponse) {
+    if (imageResponse.hasError()) {
+      System.err.println("Error getting image labels: " + imageResponse.getError().getMessage());
+      return new ArrayList<String>();
+    }
+
+    return imageResponse.getLabelAnnotationsList()
+            .stream()
+            .filter(label -> label.getScore() > THRESHOLD_ACCURACY)
+            .map(label -> label.getDescription())
+            .collect(Collectors.toList());
+  }
+
+  /**
+   * The client is thread-safe and expensive to create, so it is created once and shared.
+   */
+  private static synchronized ImageAnnotatorClient getClient() throws IOException {
+    if (client == null) {
+      client = ImageAnnotatorClient.create();
+    }
+    return client;
+  }
+
+  /** Keeps the most recent call latencies to derive the hedging delay from. */
+  private static final class LatencyTracker {
+    private final long[] samples;
+    private final long defaultMillis;
+    private int size = 0;
+    private int next = 0;
+
+    LatencyTracker(int capacity, long defaultMillis) {
+      samples = new long[capacity];
+      this.defaultMillis = defaultMillis;
+    }
+
+    synchronized void record(long millis) {
+      samples[next] = millis;
+      next = (next + 1) % samples.length;
+      size = Math.min(size + 1, samples.length);
+    }
+
+    /** Returns the given percentile of recent latencies, or the call timeout with no samples. */
+    synchronized long percentile(double percentile) {
+      if (size == 0) {
+        return defaultMillis;
+      }
+      long[] sorted = Arrays.copyOf(samples, size);
+      Arrays.sort(sorted);
+      return sorted[(int) Math.min(size - 1, Math.ceil(percentile * size) - 1)];
+    }
+  }
+}
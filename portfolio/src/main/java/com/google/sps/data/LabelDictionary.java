@@ -0,0 +1,173 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps image labels to small integer ids so that comments store label ids instead of repeating
+ * the label strings. Vision only produces a few thousand distinct labels, so the whole dictionary
+ * is a single append-only entity that every instance caches in memory.
+ */
+public final class LabelDictionary {
+
+  private static final Key KEY = KeyFactory.createKey("labelDictionary", "imageLabels");
+  private static final String LABELS = "labels";
+  // Each retry means another instance appended in the meantime, so a few are plenty.
+  private static final int MAX_ATTEMPTS = 5;
+
+  private static final LabelDictionary INSTANCE = new LabelDictionary();
+
+  private final DatastoreService dataStore = DatastoreServiceFactory.getDatastoreService();
+
+  // A label's id is its position in this list. Both collections are replaced, never mutated, so
+  // readers can use them without holding the lock.
+  private volatile List<String> labels = Collections.emptyList();
+  private volatile Map<String, Long> ids = Collections.emptyMap();
+
+  private LabelDictionary() {}
+
+  public static LabelDictionary getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the id of each label, adding labels that aren't in the dictionary yet.
+   */
+  public List<Long> encode(List<String> imageLabels) {
+    List<Long> encoded = lookUp(imageLabels);
+    if (encoded == null) {
+      addLabels(imageLabels);
+      encoded = lookUp(imageLabels);
+    }
+    return encoded;
+  }
+
+  /**
+   * Returns the label for each id. Ids that are still unknown after reloading the dictionary are
+   * dropped rather than failing the read of the whole comment.
+   */
+  public List<String> decode(List<Long> labelIds) {
+    List<String> current = labels;
+    for (long id : labelIds) {
+      if (id >= current.size()) {
+        // Another instance added labels since we last loaded the dictionary.
+        reload();
+        current = labels;
+        break;
+      }
+    }
+
+    List<String> decoded = new ArrayList<>(labelIds.size());
+    for (long id : labelIds) {
+      if (id >= 0 && id < current.size()) {
+        decoded.add(current.get((int) id));
+      }
+    }
+    return decoded;
+  }
+
+  /**
+   * @return the ids of all labels, or null if any label is missing from the cached dictionary
+   */
+  private List<Long> lookUp(List<String> imageLabels) {
+    Map<String, Long> current = ids;
+    List<Long> encoded = new ArrayList<>(imageLabels.size());
+    for (String label : imageLabels) {
+      Long id = current.get(label);
+      if (id == null) {
+        return null;
+      }
+      encoded.add(id);
+    }
+    return encoded;
+  }
+
+  /**
+   * Appends the missing labels to the stored dictionary in a transaction, so concurrent writers
+   * on other instances never hand out the same id twice.
+   *
+   * @throws ConcurrentModificationException if the transaction kept colliding with other writers
+   */
+  private synchronized void addLabels(List<String> imageLabels) {
+    for (int attempt = 1; ; attempt++) {
+      Transaction txn = dataStore.beginTransaction();
+      try {
+        List<String> stored = new ArrayList<>(load(txn));
+        boolean changed = false;
+        for (String label : imageLabels) {
+          if (!stored.contains(label)) {
+            stored.add(label);
+            changed = true;
+          }
+        }
+        if (changed) {
+          Entity dictionary = new Entity(KEY);
+          dictionary.setUnindexedProperty(LABELS, stored);
+          dataStore.put(txn, dictionary);
+        }
+        txn.commit();
+        cache(stored);
+        return;
+      } catch (ConcurrentModificationException e) {
+        // Another instance appended at the same time; retry against its version.
+        if (attempt == MAX_ATTEMPTS) {
+          System.err.println("Giving up adding image labels after " + attempt + " attempts");
+          throw e;
+        }
+      } finally {
+        if (txn.isActive()) {
+          txn.rollback();
+        }
+      }
+    }
+  }
+
+  private synchronized void reload() {
+    cache(load(null));
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<String> load(Transaction txn) {
+    try {
+      Entity dictionary = dataStore.get(txn, KEY);
+      List<String> stored = (List<String>) dictionary.getProperty(LABELS);
+      return stored == null ? Collections.<String>emptyList() : stored;
+    } catch (EntityNotFoundException e) {
+      return Collections.emptyList();
+    }
+  }
+
+  private void cache(List<String> stored) {
+    Map<String, Long> newIds = new HashMap<>();
+    for (int i = 0; i < stored.size(); i++) {
+      newIds.put(stored.get(i), (long) i);
+    }
+    labels = Collections.unmodifiableList(new ArrayList<>(stored));
+    ids = newIds;
+  }
+}
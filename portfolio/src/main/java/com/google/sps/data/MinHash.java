@@ -0,0 +1,112 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * MinHash signatures of image label sets. The fraction of positions at which two signatures agree
+ * estimates the Jaccard similarity of the label sets, so similar images can be found without
+ * comparing label sets pairwise.
+ */
+public final class MinHash {
+
+  // The signature is split into BANDS bands of ROWS_PER_BAND values for locality-sensitive
+  // hashing. Two sets with Jaccard similarity s share at least one band with probability
+  // 1 - (1 - s^4)^16, e.g. 0.64 for s = 0.5 and 0.98 for s = 0.75.
+  public static final int BANDS = 16;
+  public static final int ROWS_PER_BAND = 4;
+  public static final int SIGNATURE_LENGTH = BANDS * ROWS_PER_BAND;
+
+  private static final long[] SEEDS = new long[SIGNATURE_LENGTH];
+
+  static {
+    // Fixed seeds: signatures are persisted, so they must be the same on every instance.
+    long seed = 0x5DEECE66DL;
+    for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+      seed = mix(seed + 0x9E3779B97F4A7C15L);
+      SEEDS[i] = seed;
+    }
+  }
+
+  private MinHash() {
+    // Disallow instances.
+  }
+
+  /**
+   * Returns the signature of a non-empty set of labels. Labels are compared case-insensitively.
+   */
+  public static int[] signature(Collection<String> labels) {
+    int[] signature = new int[SIGNATURE_LENGTH];
+    Arrays.fill(signature, Integer.MAX_VALUE);
+    for (String label : labels) {
+      long base = label.toLowerCase(Locale.ROOT).hashCode();
+      for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+        // Keep 31 bits so that values compare correctly as signed ints.
+        int hash = (int) (mix(base ^ SEEDS[i]) >>> 33);
+        if (hash < signature[i]) {
+          signature[i] = hash;
+        }
+      }
+    }
+    return signature;
+  }
+
+  /**
+   * Returns the estimated Jaccard similarity of the sets behind two signatures.
+   */
+  public static double similarity(int[] a, int[] b) {
+    int matches = 0;
+    for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+      if (a[i] == b[i]) {
+        matches++;
+      }
+    }
+    return (double) matches / SIGNATURE_LENGTH;
+  }
+
+  /**
+   * Returns the LSH bucket key of one band of a signature.
+   */
+  public static long bandKey(int[] signature, int band) {
+    long key = band;
+    for (int i = band * ROWS_PER_BAND; i < (band + 1) * ROWS_PER_BAND; i++) {
+      key = mix(key * 31 + signature[i]);
+    }
+    return key;
+  }
+
+  public static byte[] toBytes(int[] signature) {
+    ByteBuffer buffer = ByteBuffer.allocate(SIGNATURE_LENGTH * Integer.BYTES);
+    buffer.asIntBuffer().put(signature);
+    return buffer.array();
+  }
+
+  public static int[] fromBytes(byte[] bytes) {
+    int[] signature = new int[SIGNATURE_LENGTH];
+    ByteBuffer.wrap(bytes).asIntBuffer().get(signature);
+    return signature;
+  }
+
+  /** The SplitMix64 finalizer: a cheap, well-distributed 64-bit mixing function. */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
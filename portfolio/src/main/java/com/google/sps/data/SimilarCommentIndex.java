@@ -0,0 +1,139 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory locality-sensitive hashing index over the MinHash signatures of comment images.
+ * Comments whose signatures agree on all values of at least one band land in the same bucket,
+ * so finding similar comments only scores the few comments sharing a bucket instead of all of
+ * them. The index is updated as comments are written and is safe to use from any thread. Each
+ * instance holds its own copy, which {@code SimilarCommentIndexLoader} periodically refreshes from
+ * Datastore to pick up writes and removals made on other instances.
+ */
+public final class SimilarCommentIndex {
+
+  private static final SimilarCommentIndex INSTANCE = new SimilarCommentIndex();
+
+  private final Map<Long, int[]> signatures = new ConcurrentHashMap<>();
+  private final List<Map<Long, Set<Long>>> bands = new ArrayList<>(MinHash.BANDS);
+
+  private SimilarCommentIndex() {
+    for (int band = 0; band < MinHash.BANDS; band++) {
+      bands.add(new ConcurrentHashMap<Long, Set<Long>>());
+    }
+  }
+
+  public static SimilarCommentIndex getInstance() {
+    return INSTANCE;
+  }
+
+  /** A comment id together with its estimated similarity to the query comment. */
+  public static final class Match {
+    private final long id;
+    private final double score;
+
+    Match(long id, double score) {
+      this.id = id;
+      this.score = score;
+    }
+  }
+
+  /**
+   * Adds or replaces the signature of a comment.
+   */
+  public void add(long id, int[] signature) {
+    int[] previous = signatures.put(id, signature);
+    if (previous != null) {
+      removeFromBands(id, previous);
+    }
+    // Buckets are only created and dropped inside compute() so that an add never lands in a
+    // bucket that a concurrent remove is discarding.
+    for (int band = 0; band < MinHash.BANDS; band++) {
+      bands.get(band).compute(MinHash.bandKey(signature, band), (key, bucket) -> {
+        Set<Long> ids = bucket == null ? ConcurrentHashMap.<Long>newKeySet() : bucket;
+        ids.add(id);
+        return ids;
+      });
+    }
+  }
+
+  public void remove(long id) {
+    int[] previous = signatures.remove(id);
+    if (previous != null) {
+      removeFromBands(id, previous);
+    }
+  }
+
+  /**
+   * Returns a snapshot of the ids of all indexed comments.
+   */
+  public Set<Long> ids() {
+    return new HashSet<>(signatures.keySet());
+  }
+
+  public int size() {
+    return signatures.size();
+  }
+
+  /**
+   * Returns up to {@code limit} comments most similar to comment {@code id}, best match first, or
+   * an empty list if the comment isn't indexed.
+   */
+  public List<Match> findSimilar(long id, int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("limit cannot be negative: " + limit);
+    }
+    int[] signature = signatures.get(id);
+    if (signature == null) {
+      return Collections.emptyList();
+    }
+
+    Set<Long> candidates = new HashSet<>();
+    for (int band = 0; band < MinHash.BANDS; band++) {
+      Set<Long> bucket = bands.get(band).get(MinHash.bandKey(signature, band));
+      if (bucket != null) {
+        candidates.addAll(bucket);
+      }
+    }
+    candidates.remove(id);
+
+    List<Match> matches = new ArrayList<>(candidates.size());
+    for (long candidate : candidates) {
+      int[] candidateSignature = signatures.get(candidate);
+      if (candidateSignature != null) {
+        matches.add(new Match(candidate, MinHash.similarity(signature, candidateSignature)));
+      }
+    }
+    matches.sort((a, b) -> Double.compare(b.score, a.score));
+    return matches.size() > limit ? matches.subList(0, limit) : matches;
+  }
+
+  private void removeFromBands(long id, int[] signature) {
+    for (int band = 0; band < MinHash.BANDS; band++) {
+      bands.get(band).computeIfPresent(MinHash.bandKey(signature, band), (key, bucket) -> {
+        bucket.remove(id);
+        return bucket.isEmpty() ? null : bucket;
+      });
+    }
+  }
+}
@@ -0,0 +1,51 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import javax.servlet.http.HttpServletRequest;
+
+/** Helpers shared by the cron and admin-only servlets. */
+final class AdminRequests {
+
+  private AdminRequests() {
+    // Disallow instances.
+  }
+
+  /**
+   * Returns whether the request came from the cron service or a signed-in admin. App Engine strips
+   * the X-Appengine-Cron header from external requests, so its presence can be trusted.
+   */
+  static boolean isCronOrAdmin(HttpServletRequest request) {
+    if ("true".equals(request.getHeader("X-Appengine-Cron"))) {
+      return true;
+    }
+    UserService userService = UserServiceFactory.getUserService();
+    return userService.isUserLoggedIn() && userService.isUserAdmin();
+  }
+
+  /**
+   * @return the request parameter as an int, or the default value if the parameter
+   *         was not specified by the client
+   */
+  static int getIntParameter(HttpServletRequest request, String name, int defaultValue) {
+    String value = request.getParameter(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    return Integer.parseInt(value);
+  }
+}
@@ -0,0 +1,115 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.sps.data.CommentArchive;
+import com.google.sps.data.CommentSchema;
+import com.google.sps.data.SimilarCommentIndex;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Background job, triggered by cron, that moves comments older than {@code HOT_WINDOW_MILLIS} out
+ * of the {@code comment} kind and into {@code commentArchive} entities of at most
+ * {@code CommentArchive.COMMENTS_PER_ARCHIVE} comments each. Chunks of long comments are split
+ * further so that every archive stays within the entity size limit.
+ */
+@WebServlet("/comments/compact")
+public class CommentCompactionServlet extends HttpServlet {
+
+  private static final long HOT_WINDOW_MILLIS = TimeUnit.DAYS.toMillis(28);
+  // Bounds the work done by a single cron invocation so it finishes well within the deadline.
+  private static final int MAX_ARCHIVES_PER_RUN = 20;
+
+  private DatastoreService dataStore = DatastoreServiceFactory.getDatastoreService();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!AdminRequests.isCronOrAdmin(request)) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    long cutoff = System.currentTimeMillis() - HOT_WINDOW_MILLIS;
+    int archived = 0;
+    int archives = 0;
+    while (archives < MAX_ARCHIVES_PER_RUN) {
+      int compacted = compactOldestChunk(cutoff);
+      if (compacted == 0) {
+        break;
+      }
+      archived += compacted;
+      archives++;
+    }
+
+    response.setContentType("application/json;");
+    response.getWriter().println(
+        String.format("{ \"archives\": %d, \"comments\": %d }", archives, archived));
+  }
+
+  /**
+   * Moves the oldest full chunk of comments older than {@code cutoff} into an archive entity, or
+   * the oldest part of it that fits. Partial chunks are left in place until enough old comments
+   * accumulate to fill an archive.
+   *
+   * @return the number of comments archived, or 0 if there was no full chunk to compact
+   */
+  private int compactOldestChunk(long cutoff) {
+    Query query = new Query(CommentSchema.KIND)
+        .setFilter(new FilterPredicate(CommentSchema.TIMESTAMP, FilterOperator.LESS_THAN, cutoff))
+        .addSort(CommentSchema.TIMESTAMP, SortDirection.ASCENDING);
+    List<Entity> chunk = dataStore.prepare(query)
+        .asList(FetchOptions.Builder.withLimit(CommentArchive.COMMENTS_PER_ARCHIVE));
+
+    if (chunk.size() < CommentArchive.COMMENTS_PER_ARCHIVE) {
+      return 0;
+    }
+
+    // Halve the chunk until it fits. It always keeps its oldest comment, so a rerun over the same
+    // comments shrinks it the same way and derives the same archive key.
+    Entity archive = CommentArchive.toArchiveEntity(chunk);
+    while (!CommentArchive.fits(archive) && chunk.size() > 1) {
+      chunk = chunk.subList(0, chunk.size() / 2);
+      archive = CommentArchive.toArchiveEntity(chunk);
+    }
+
+    // The archive is written before the originals are deleted, and its key is derived from the
+    // chunk, so an interrupted run is repaired by simply running again.
+    dataStore.put(archive);
+
+    List<Key> keys = new ArrayList<>(chunk.size());
+    for (Entity entity : chunk) {
+      keys.add(entity.getKey());
+      SimilarCommentIndex.getInstance().remove(entity.getKey().getId());
+    }
+    dataStore.delete(keys);
+    return chunk.size();
+  }
+}
@@ -0,0 +1,223 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyRange;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.sps.data.CommentRecord;
+import com.google.sps.data.CommentSchema;
+import com.google.sps.data.SimilarCommentIndex;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Admin endpoint for bulk export and import of comments as NDJSON, one {@link CommentRecord} per
+ * line. Neither direction calls Vision; labels travel with the comments.
+ *
+ * <p>{@code GET} streams comments while iterating a Datastore cursor in chunks of
+ * {@code batchSize}, so only one chunk is held in memory. At most {@code limit} comments are
+ * written per request; if more remain, the last line is {@code {"nextCursor": "..."}} and the
+ * export continues with {@code ?cursor=}.
+ *
+ * <p>{@code POST} reads NDJSON from the request body and writes it with batched puts of
+ * {@code batchSize} entities. At most one put is in flight while the next batch is parsed, so the
+ * request body is only read as fast as Datastore accepts writes and memory stays at two batches.
+ * Records keep their ids, so re-running an import is idempotent. Before each put the ids up to
+ * the largest one in the batch are reserved with {@code allocateIdRange}, so new comments are
+ * never given the id of an imported one. Imported comments are added to the similarity index
+ * only once their put has succeeded.
+ */
+@WebServlet("/comments/ndjson")
+public class CommentTransferServlet extends HttpServlet {
+
+  // Datastore accepts at most 500 entities per batch put.
+  private static final int MAX_BATCH_SIZE = 500;
+  private static final int DEFAULT_EXPORT_LIMIT = 100000;
+
+  private static final Gson GSON = new Gson();
+
+  private AsyncDatastoreService dataStore = DatastoreServiceFactory.getAsyncDatastoreService();
+  // Id ranges can only be reserved through the synchronous service.
+  private DatastoreService syncDataStore = DatastoreServiceFactory.getDatastoreService();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!AdminRequests.isCronOrAdmin(request)) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    int batchSize = getBatchSize(request);
+    int limit = AdminRequests.getIntParameter(request, "limit", DEFAULT_EXPORT_LIMIT);
+    FetchOptions options = FetchOptions.Builder.withChunkSize(batchSize).prefetchSize(batchSize);
+    String cursor = request.getParameter("cursor");
+    if (cursor != null) {
+      try {
+        options.startCursor(Cursor.fromWebSafeString(cursor));
+      } catch (IllegalArgumentException e) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+            "cursor must be a nextCursor returned by this servlet");
+        return;
+      }
+    }
+
+    response.setContentType("application/x-ndjson");
+    response.setCharacterEncoding("UTF-8");
+    PrintWriter out = response.getWriter();
+
+    QueryResultIterator<Entity> results =
+        dataStore.prepare(new Query(CommentSchema.KIND)).asQueryResultIterator(options);
+    int exported = 0;
+    while (exported < limit && results.hasNext()) {
+      GSON.toJson(CommentRecord.fromEntity(results.next()), out);
+      out.write('\n');
+      exported++;
+      if (exported % batchSize == 0) {
+        // Hand each chunk to the client before fetching the next one.
+        out.flush();
+      }
+    }
+
+    if (results.hasNext()) {
+      out.println(String.format("{\"nextCursor\": \"%s\"}", results.getCursor().toWebSafeString()));
+    }
+    out.flush();
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!AdminRequests.isCronOrAdmin(request)) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    int batchSize = getBatchSize(request);
+    BufferedReader reader = request.getReader();
+    List<Entity> batch = new ArrayList<>(batchSize);
+    Future<List<Key>> pendingPut = null;
+    List<Entity> pendingBatch = null;
+    long reservedUpTo = 0;
+    long imported = 0;
+    long lineNumber = 0;
+
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.trim().isEmpty() || line.startsWith("{\"nextCursor\"")) {
+          continue;
+        }
+        CommentRecord record = GSON.fromJson(line, CommentRecord.class);
+        if (record == null) {
+          throw new IllegalArgumentException("Expected a comment record, found null");
+        }
+        batch.add(record.toEntity());
+
+        if (batch.size() == batchSize) {
+          imported += awaitPut(pendingPut, pendingBatch);
+          reservedUpTo = reserveIds(batch, reservedUpTo);
+          pendingPut = dataStore.put(batch);
+          pendingBatch = batch;
+          batch = new ArrayList<>(batchSize);
+        }
+      }
+      imported += awaitPut(pendingPut, pendingBatch);
+      if (!batch.isEmpty()) {
+        reserveIds(batch, reservedUpTo);
+        imported += awaitPut(dataStore.put(batch), batch);
+      }
+    } catch (JsonParseException | IllegalArgumentException e) {
+      // Batches before the bad line have been written; fix the line and re-run, it's idempotent.
+      awaitPut(pendingPut, pendingBatch);
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          String.format("Line %d: %s", lineNumber, e.getMessage()));
+      return;
+    }
+
+    response.setContentType("application/json;");
+    response.getWriter().println(String.format("{ \"imported\": %d }", imported));
+  }
+
+  /**
+   * Reserves the ids from {@code reservedUpTo + 1} to the largest id in {@code batch}, so that
+   * {@code allocateIds} never hands them out to new comments.
+   *
+   * @return the largest id reserved so far
+   */
+  private long reserveIds(List<Entity> batch, long reservedUpTo) {
+    long maxId = reservedUpTo;
+    for (Entity entity : batch) {
+      maxId = Math.max(maxId, entity.getKey().getId());
+    }
+    if (maxId > reservedUpTo) {
+      // A collision only means some of the ids are already in use, e.g. by an earlier import;
+      // they are reserved all the same.
+      syncDataStore.allocateIdRange(
+          new KeyRange(null, CommentSchema.KIND, reservedUpTo + 1, maxId));
+    }
+    return maxId;
+  }
+
+  /**
+   * Waits for {@code put} of {@code entities} to succeed, then adds them to the similarity index.
+   *
+   * @return the number of comments written
+   */
+  private int awaitPut(Future<List<Key>> put, List<Entity> entities) throws IOException {
+    if (put == null) {
+      return 0;
+    }
+    try {
+      put.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while importing comments", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to import comments", e.getCause());
+    }
+
+    for (Entity entity : entities) {
+      int[] signature = CommentSchema.getMinHash(entity);
+      if (signature != null) {
+        SimilarCommentIndex.getInstance().add(entity.getKey().getId(), signature);
+      }
+    }
+    return entities.size();
+  }
+
+  private int getBatchSize(HttpServletRequest request) {
+    int batchSize = AdminRequests.getIntParameter(request, "batchSize", MAX_BATCH_SIZE);
+    return Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+  }
+}
@@ -0,0 +1,87 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.sps.data.CommentSchema;
+import java.util.ConcurrentModificationException;
+import java.util.function.Predicate;
+
+/**
+ * Read-modify-write of single comments from background jobs, which may hold copies of entities
+ * that were changed or archived since they were read.
+ */
+final class CommentUpdates {
+
+  // A collision means someone else just wrote the comment; the next job run tries again.
+  private static final int MAX_ATTEMPTS = 3;
+
+  private CommentUpdates() {
+    // Disallow instances.
+  }
+
+  /**
+   * Re-reads the comment with {@code key} in a transaction, applies {@code update} to the fresh
+   * copy and writes it back. A comment that no longer exists, e.g. because it was archived, is
+   * skipped rather than written back to life.
+   *
+   * @param update changes the entity, returning false if there is nothing to write
+   * @return the entity as written, or null if it was skipped or kept colliding with other writers
+   */
+  static Entity update(DatastoreService dataStore, Key key, Predicate<Entity> update) {
+    for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+      Transaction txn = dataStore.beginTransaction();
+      try {
+        Entity entity = dataStore.get(txn, key);
+        if (!update.test(entity)) {
+          return null;
+        }
+        dataStore.put(txn, entity);
+        txn.commit();
+        return entity;
+      } catch (EntityNotFoundException e) {
+        return null;
+      } catch (ConcurrentModificationException e) {
+        // Retry against the other writer's version.
+      } finally {
+        if (txn.isActive()) {
+          txn.rollback();
+        }
+      }
+    }
+    System.err.println("Giving up updating comment " + key + " after " + MAX_ATTEMPTS
+        + " attempts");
+    return null;
+  }
+
+  /**
+   * Upgrades the comment with {@code key} to the current {@link CommentSchema} version.
+   *
+   * @return the upgraded entity, or null if it was already current, gone or too contended
+   */
+  static Entity migrate(DatastoreService dataStore, Key key) {
+    return update(dataStore, key, entity -> {
+      if (!CommentSchema.needsMigration(entity)) {
+        return false;
+      }
+      CommentSchema.migrate(entity);
+      return true;
+    });
+  }
+}
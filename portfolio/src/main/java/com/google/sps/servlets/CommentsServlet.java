@@ -19,27 +19,32 @@ import com.google.appengine.api.blobstore.BlobInfoFactory;
 import com.google.appengine.api.blobstore.BlobKey;
 import com.google.appengine.api.blobstore.BlobstoreService;
 import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
 import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.QueryResultList;
 import com.google.appengine.api.images.ImagesService;
 import com.google.appengine.api.images.ImagesServiceFactory;
 import com.google.appengine.api.images.ServingUrlOptions;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
-import com.google.cloud.vision.v1.AnnotateImageRequest;
-import com.google.cloud.vision.v1.AnnotateImageResponse;
-import com.google.cloud.vision.v1.BatchAnnotateImagesResponse;
-import com.google.cloud.vision.v1.EntityAnnotation;
-import com.google.cloud.vision.v1.Feature;
-import com.google.cloud.vision.v1.Image;
-import com.google.cloud.vision.v1.ImageAnnotatorClient;
 import com.google.gson.Gson;
 import com.google.protobuf.ByteString;
 import com.google.sps.data.Comment;
+import com.google.sps.data.CommentArchive;
+import com.google.sps.data.CommentSchema;
+import com.google.sps.data.ImageLabeler;
+import com.google.sps.data.SimilarCommentIndex;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -48,39 +53,64 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 /** Servlet that returns comments content. */
 @WebServlet("/comments")
 public class CommentsServlet extends HttpServlet {
 
   private DatastoreService dataStore = DatastoreServiceFactory.getDatastoreService();
-  private Feature feature = Feature.newBuilder().setType(Feature.Type.LABEL_DETECTION).build();
-  private ImageAnnotatorClient client;
-  private double THRESHOLD_ACCURACY = 0.80;
+  private ImageLabeler imageLabeler = ImageLabeler.getInstance();
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    Query query = new Query("comment").addSort("timestamp", SortDirection.DESCENDING);
+    String archiveBefore = request.getParameter("archiveBefore");
+    if (archiveBefore != null) {
+      long before;
+      Cursor cursor = null;
+      try {
+        before = Long.parseLong(archiveBefore);
+        String archiveCursor = request.getParameter("archiveCursor");
+        if (archiveCursor != null) {
+          cursor = Cursor.fromWebSafeString(archiveCursor);
+        }
+      } catch (IllegalArgumentException e) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+            "archiveBefore must be a timestamp and archiveCursor one returned by this servlet");
+        return;
+      }
+      writeArchivedComments(before, cursor, response);
+      return;
+    }
+    String thread = request.getParameter("thread");
+    if (thread != null) {
+      writeThread(thread, response);
+      return;
+    }
+
+    Query query = new Query(CommentSchema.KIND)
+        .addSort(CommentSchema.TIMESTAMP, SortDirection.DESCENDING);
     PreparedQuery results = dataStore.prepare(query);
 
+    List<Entity> entities = results.asList(FetchOptions.Builder.withDefaults());
+    Set<Long> ids = new HashSet<>();
+    for (Entity entity : entities) {
+      ids.add(entity.getKey().getId());
+    }
     List<Comment> comments = new ArrayList<>();
-    for (Entity entity : results.asIterable()) {
-      long id = entity.getKey().getId();
-      String text = (String) entity.getProperty("comment");
-      String username = (String) entity.getProperty("username");
-      String imageUrl = (String) entity.getProperty("imageUrl");
-      List<String> imageLabels = (ArrayList<String>)entity.getProperty("imageLabels");
-      long timestamp = (long) entity.getProperty("timestamp");
-
-      if (username.isEmpty()) {
-        username = "Anonymous User";
+    for (Entity entity : entities) {
+      // Replies are served with their thread rather than in the top-level feed, unless their
+      // parent has been archived. Those are listed here so their thread can still be opened.
+      if (!CommentSchema.isReply(entity)
+          || !ids.contains(CommentSchema.getParentId(CommentSchema.getPath(entity)))) {
+        comments.add(CommentSchema.toComment(entity));
       }
-
-      Comment comment = new Comment(id, text, username, imageUrl, imageLabels, timestamp);
-      comments.add(comment);
     }
 
     String json = getCommentsJson(comments);
@@ -93,6 +123,17 @@ public class CommentsServlet extends HttpServlet {
 
     UserService userService = UserServiceFactory.getUserService();
 
+    Long parentId = null;
+    String parentIdParameter = request.getParameter("parentId");
+    if (parentIdParameter != null && !parentIdParameter.isEmpty()) {
+      try {
+        parentId = Long.parseLong(parentIdParameter);
+      } catch (NumberFormatException e) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "parentId must be a comment id");
+        return;
+      }
+    }
+
     String text = getParameter(request, "text-input", "");
     String email = userService.getCurrentUser().getEmail();
     // assumes that all emails will have @ key in the string
@@ -101,27 +142,121 @@ public class CommentsServlet extends HttpServlet {
 
     // Get the BlobKey that points to the image uploaded by the user.
     BlobKey blobKey = getBlobKey(request, "imageFile");
-    // Get the labels of the image that the user uploaded.
+    // Get the labels of the image that the user uploaded. If Vision is slow or unavailable this
+    // returns no labels rather than holding up the request.
     ByteString blobByteString = getBlobByteString(blobKey);
-    List<String> imageLabels = getImageLabels(blobByteString);
+    List<String> imageLabels = imageLabeler.getImageLabels(blobByteString);
 
     if (!text.isEmpty()) {
-      long timestamp = System.currentTimeMillis();
-      Entity commentEntity = new Entity("comment");
-
-      commentEntity.setProperty("comment", text);
-      commentEntity.setProperty("email", email);
-      commentEntity.setProperty("username", username);
-      commentEntity.setProperty("imageUrl", imageUrl);
-      commentEntity.setProperty("imageLabels", imageLabels);
-      commentEntity.setProperty("timestamp", timestamp);
+      String parentPath = parentId == null ? null : getPathForReply(parentId);
 
+      long timestamp = System.currentTimeMillis();
+      Key key = dataStore.allocateIds(CommentSchema.KIND, 1).getStart();
+      Entity commentEntity;
+      try {
+        commentEntity = CommentSchema.newEntity(
+            key, parentPath, text, email, username, imageUrl, imageLabels, timestamp);
+      } catch (ConcurrentModificationException e) {
+        // The label dictionary is too contended to add this image's labels right now. Keep the
+        // comment and leave the labels to the backfill job.
+        commentEntity = CommentSchema.newEntity(key, parentPath, text, email, username, imageUrl,
+            Collections.<String>emptyList(), timestamp);
+      }
       dataStore.put(commentEntity);
+      indexSignature(commentEntity);
     }
 
     response.sendRedirect("/");
   }
 
+  private void indexSignature(Entity commentEntity) {
+    int[] signature = CommentSchema.getMinHash(commentEntity);
+    if (signature != null) {
+      SimilarCommentIndex.getInstance().add(commentEntity.getKey().getId(), signature);
+    }
+  }
+
+  /**
+   * Serves the comment at {@code path} together with all of its replies, at any depth. The whole
+   * subtree comes back from a single range query in depth-first order, so each comment's parent
+   * has always been seen before it and the tree is assembled in one pass.
+   */
+  private void writeThread(String path, HttpServletResponse response) throws IOException {
+    Query query = new Query(CommentSchema.KIND).setFilter(CommentSchema.subtreeFilter(path));
+
+    Comment root = null;
+    Map<Long, Comment> commentsById = new HashMap<>();
+    for (Entity entity : dataStore.prepare(query).asIterable()) {
+      Comment comment = CommentSchema.toComment(entity);
+      commentsById.put(comment.getId(), comment);
+
+      String commentPath = CommentSchema.getPath(entity);
+      Comment parent = commentsById.get(CommentSchema.getParentId(commentPath));
+      if (commentPath.equals(path)) {
+        root = comment;
+      } else if (parent != null) {
+        parent.addReply(comment);
+      }
+    }
+
+    if (root == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    response.setContentType("application/json;");
+    response.getWriter().println(String.format("{ \"thread\": %s }", new Gson().toJson(root)));
+  }
+
+  /**
+   * Returns the path under which a reply to {@code parentId} is stored. Comments written before
+   * threading get their path stored here, so that their thread can be range-queried.
+   */
+  private String getPathForReply(long parentId) {
+    Key parentKey = KeyFactory.createKey(CommentSchema.KIND, parentId);
+    try {
+      Entity parent = dataStore.get(parentKey);
+      if (CommentSchema.needsMigration(parent)) {
+        // Migrated in a transaction, so a parent archived in the meantime stays archived.
+        CommentUpdates.migrate(dataStore, parentKey);
+      }
+      return CommentSchema.getPath(parent);
+    } catch (EntityNotFoundException e) {
+      // The parent is gone, e.g. archived; post the reply as a top-level comment instead.
+      return null;
+    }
+  }
+
+  /**
+   * Serves deep history from the archive tier: the newest archive chunk that starts before
+   * {@code before}, fetched as a single entity, or the next older one after {@code cursor}. The
+   * response carries the cursor of the chunk it served, to be passed back with the same
+   * {@code archiveBefore}, and omits it once the oldest archive has been reached. Paging by
+   * cursor rather than by start time keeps archives that start at the same millisecond from
+   * being skipped.
+   */
+  private void writeArchivedComments(long before, Cursor cursor, HttpServletResponse response)
+      throws IOException {
+    Query query = new Query(CommentArchive.KIND)
+        .setFilter(new FilterPredicate(
+            CommentArchive.START_TIMESTAMP, FilterOperator.LESS_THAN, before))
+        .addSort(CommentArchive.START_TIMESTAMP, SortDirection.DESCENDING);
+    FetchOptions options = FetchOptions.Builder.withLimit(1);
+    if (cursor != null) {
+      options.startCursor(cursor);
+    }
+    QueryResultList<Entity> archives = dataStore.prepare(query).asQueryResultList(options);
+
+    response.setContentType("application/json;");
+    if (archives.isEmpty()) {
+      response.getWriter().println(getCommentsJson(new ArrayList<Comment>()));
+      return;
+    }
+
+    List<Comment> comments = CommentArchive.readComments(archives.get(0));
+    response.getWriter().println(String.format("{ \"comments\": %s, \"nextArchiveCursor\": %s }",
+        new Gson().toJson(comments), new Gson().toJson(archives.getCursor().toWebSafeString())));
+  }
+
   /**
    * Converts the comments array into a JSON string using Gson.
    */
@@ -214,35 +349,4 @@ public class CommentsServlet extends HttpServlet {
     // more efficient way of returning object
     return ByteString.readFrom(inputStream);
   }
-
-  /**
-   * Uses the Google Cloud Vision API to generate a list of labels that apply to the image
-   * represented by the binary data stored in imgByteString.
-   */
-  private List<String> getImageLabels(ByteString imgByteString) throws IOException {
-    Image image = Image.newBuilder().setContent(imgByteString).build();
-
-    AnnotateImageRequest request =
-        AnnotateImageRequest.newBuilder().addFeatures(feature).setImage(image).build();
-    List<AnnotateImageRequest> requests = new ArrayList<>();
-    requests.add(request);
-
-    // need to initialize within the method to throw IOException
-    client = ImageAnnotatorClient.create();
-    BatchAnnotateImagesResponse batchResponse = client.batchAnnotateImages(requests);
-    client.close();
-    List<AnnotateImageResponse> imageResponses = batchResponse.getResponsesList();
-    AnnotateImageResponse imageResponse = imageResponses.get(0);
-
-    if (imageResponse.hasError()) {
-      System.err.println("Error getting image labels: " + imageResponse.getError().getMessage());
-      return new ArrayList<String>();
-    }
-    
-    return imageResponse.getLabelAnnotationsList()
-            .stream()
-            .filter(label -> label.getScore() > THRESHOLD_ACCURACY)
-            .map(label -> label.getDescription())
-            .collect(Collectors.toList());
-  }
-}
\ No newline at end of file
+}
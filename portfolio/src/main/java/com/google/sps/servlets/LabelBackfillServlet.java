@@ -0,0 +1,402 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.sps.data.CommentSchema;
+import com.google.sps.data.ImageLabeler;
+import com.google.sps.data.LabelDictionary;
+import com.google.sps.data.SimilarCommentIndex;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Resumable job that adds image labels to comments that have an image but no labels, either
+ * because they predate labeling or because their Vision call failed. It also upgrades comments
+ * stored in an older {@link CommentSchema} version as it passes them.
+ *
+ * <p>Each invocation walks the {@code comment} kind with a Datastore cursor for at most
+ * {@code maxMillis}, labels pages of comments in parallel batches and writes each labeled comment
+ * back in its own transaction, skipping comments that were archived or labeled in the meantime.
+ * After every page the cursor is checkpointed to a {@code job} entity, so the next invocation
+ * (normally from cron) resumes where the last one stopped, even on another instance.
+ * When a pass reaches the end of the kind, the invocation stops and the next one starts a new
+ * pass from the beginning, so comments whose labeling failed since, or that were written behind
+ * the cursor, are picked up too. A page is only checkpointed once every batch in it succeeded.
+ *
+ * <p>An invocation first claims the job in a transaction, and only checkpoints while it still
+ * holds the claim. An invocation that overlaps a running one, e.g. because a run outlasted the
+ * cron interval, returns without doing anything instead of processing the same pages again. A
+ * claim expires {@code CLAIM_SLACK_MILLIS} after its run's time budget, in case the run died.
+ *
+ * <p>Request parameters, all optional:
+ * <ul>
+ *   <li>{@code batchSize}: images per Vision request (default 16, at most 16)
+ *   <li>{@code concurrency}: batches labeled in parallel (default 2, at most 8)
+ *   <li>{@code maxPerSecond}: upper bound on comments scanned per second (default 50)
+ *   <li>{@code maxMillis}: time budget for this invocation (default 5 minutes)
+ *   <li>{@code reset}: abandon the current pass and start a fresh one
+ * </ul>
+ */
+@WebServlet("/comments/backfill-labels")
+public class LabelBackfillServlet extends HttpServlet {
+
+  private static final String JOB_KIND = "job";
+  private static final String JOB_NAME = "imageLabelBackfill";
+  private static final Key JOB_KEY = KeyFactory.createKey(JOB_KIND, JOB_NAME);
+
+  // Vision accepts at most 16 images per batch request.
+  private static final int MAX_BATCH_SIZE = 16;
+  // The size of the backfill labeler's pool.
+  private static final int MAX_CONCURRENCY = 8;
+  // Covers a page that is still in flight when a run's time budget is spent.
+  private static final long CLAIM_SLACK_MILLIS = 60 * 1000;
+
+  private DatastoreService dataStore = DatastoreServiceFactory.getDatastoreService();
+  // Kept apart from the live labeler, so backfill batches can't trip its breaker.
+  private ImageLabeler imageLabeler = ImageLabeler.getBackfillInstance();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!AdminRequests.isCronOrAdmin(request)) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    int batchSize =
+        clamp(AdminRequests.getIntParameter(request, "batchSize", MAX_BATCH_SIZE), MAX_BATCH_SIZE);
+    int concurrency =
+        clamp(AdminRequests.getIntParameter(request, "concurrency", 2), MAX_CONCURRENCY);
+    int maxPerSecond = Math.max(1, AdminRequests.getIntParameter(request, "maxPerSecond", 50));
+    long maxMillis = AdminRequests.getIntParameter(request, "maxMillis", 5 * 60 * 1000);
+
+    String claim = UUID.randomUUID().toString();
+    Entity job = claimJob(claim, Boolean.parseBoolean(request.getParameter("reset")),
+        System.currentTimeMillis() + maxMillis + CLAIM_SLACK_MILLIS);
+    if (job == null) {
+      response.setContentType("application/json;");
+      response.getWriter().println("{ \"claimed\": false }");
+      return;
+    }
+
+    long startMillis = System.currentTimeMillis();
+    boolean passComplete = false;
+    ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+    try {
+      while (!passComplete
+          && System.currentTimeMillis() - startMillis < maxMillis
+          && !imageLabeler.isTripped()) {
+        long pageStartMillis = System.currentTimeMillis();
+        int scanned = processPage(job, batchSize, concurrency, executor);
+        if (scanned < 0) {
+          break;
+        }
+        passComplete = job.getProperty("cursor") == null;
+
+        // Sleep off any time left in this page's share of the throughput budget.
+        long minPageMillis = scanned * 1000L / maxPerSecond;
+        long elapsedMillis = System.currentTimeMillis() - pageStartMillis;
+        if (elapsedMillis < minPageMillis) {
+          Thread.sleep(minPageMillis - elapsedMillis);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      executor.shutdownNow();
+      releaseJob(claim);
+    }
+
+    response.setContentType("application/json;");
+    response.getWriter().println(String.format(
+        "{ \"claimed\": true, \"passComplete\": %b, \"passes\": %d, \"scanned\": %d, "
+            + "\"labeled\": %d, \"migrated\": %d }",
+        passComplete, job.getProperty("passes"), job.getProperty("scanned"),
+        job.getProperty("labeled"), getCount(job, "migrated")));
+  }
+
+  /**
+   * Labels one page of {@code batchSize * concurrency} comments and checkpoints the cursor, or
+   * clears it once the page is the last one of the pass. If any batch fails, the checkpoint is
+   * left where it was so the page is retried on the next run; comments that did get labeled are
+   * simply skipped then.
+   *
+   * @return the number of comments scanned, or -1 if the page has to be retried or the claim on
+   *     the job was lost
+   */
+  private int processPage(Entity job, int batchSize, int concurrency, ExecutorService executor)
+      throws InterruptedException {
+    FetchOptions options = FetchOptions.Builder.withLimit(batchSize * concurrency);
+    String cursor = (String) job.getProperty("cursor");
+    if (cursor != null) {
+      options.startCursor(Cursor.fromWebSafeString(cursor));
+    }
+    QueryResultList<Entity> page =
+        dataStore.prepare(new Query(CommentSchema.KIND)).asQueryResultList(options);
+
+    List<Entity> unlabeled = new ArrayList<>();
+    for (Entity entity : page) {
+      if (needsLabels(entity)) {
+        unlabeled.add(entity);
+      }
+    }
+
+    List<Future<Integer>> batches = new ArrayList<>();
+    for (int from = 0; from < unlabeled.size(); from += batchSize) {
+      List<Entity> batch = unlabeled.subList(from, Math.min(from + batchSize, unlabeled.size()));
+      batches.add(executor.submit(() -> labelBatch(batch)));
+    }
+    long labeled = 0;
+    boolean failed = false;
+    for (Future<Integer> batch : batches) {
+      try {
+        labeled += batch.get();
+      } catch (ExecutionException e) {
+        System.err.println("Error backfilling image labels: " + e.getCause());
+        failed = true;
+      }
+    }
+    if (failed) {
+      return -1;
+    }
+    long migrated = migrate(page);
+
+    job.setProperty("scanned", (long) job.getProperty("scanned") + page.size());
+    job.setProperty("labeled", (long) job.getProperty("labeled") + labeled);
+    job.setProperty("migrated", getCount(job, "migrated") + migrated);
+    if (page.size() < options.getLimit()) {
+      // The end of the kind: the next page starts a new pass.
+      job.setUnindexedProperty("cursor", null);
+      job.setProperty("passes", (long) job.getProperty("passes") + 1);
+    } else {
+      job.setUnindexedProperty("cursor", page.getCursor().toWebSafeString());
+    }
+    job.setProperty("updated", System.currentTimeMillis());
+    if (!checkpoint(job)) {
+      return -1;
+    }
+    return page.size();
+  }
+
+  /**
+   * Labels a batch with a single Vision request and writes each labeled comment back in a
+   * transaction.
+   *
+   * @return the number of comments that received labels
+   * @throws IllegalStateException if the Vision call failed, so the page is retried
+   */
+  private int labelBatch(List<Entity> batch) {
+    List<String> imageUrls = new ArrayList<>(batch.size());
+    for (Entity entity : batch) {
+      imageUrls.add(CommentSchema.getImageUrl(entity));
+    }
+    List<List<String>> labels = imageLabeler.tryGetImageLabelsForUrls(imageUrls);
+    if (labels == null) {
+      throw new IllegalStateException("Vision call failed for a batch of " + batch.size());
+    }
+
+    int labeled = 0;
+    for (int i = 0; i < batch.size(); i++) {
+      List<String> imageLabels = labels.get(i);
+      if (imageLabels.isEmpty()) {
+        continue;
+      }
+      try {
+        // Adds any new labels up front, so the comment's transaction doesn't also have to wait
+        // for the dictionary's.
+        LabelDictionary.getInstance().encode(imageLabels);
+      } catch (ConcurrentModificationException e) {
+        // Left unlabeled for the next pass.
+        continue;
+      }
+      Entity written = CommentUpdates.update(dataStore, batch.get(i).getKey(), current -> {
+        if (!needsLabels(current)) {
+          return false;
+        }
+        CommentSchema.setImageLabels(current, imageLabels);
+        return true;
+      });
+      if (written != null) {
+        SimilarCommentIndex.getInstance()
+            .add(written.getKey().getId(), CommentSchema.getMinHash(written));
+        labeled++;
+      }
+    }
+    return labeled;
+  }
+
+  /**
+   * Upgrades the comments of a page that are still in an older schema version. Each one is
+   * re-read and written in its own transaction, so comments archived or relabeled since the page
+   * was read are left alone.
+   *
+   * @return the number of comments upgraded
+   */
+  private int migrate(List<Entity> page) {
+    int migrated = 0;
+    for (Entity entity : page) {
+      if (!CommentSchema.needsMigration(entity)) {
+        continue;
+      }
+      if (CommentUpdates.migrate(dataStore, entity.getKey()) != null) {
+        migrated++;
+      }
+    }
+    return migrated;
+  }
+
+  /**
+   * Vision can only fetch absolute URLs, so images served relative to the dev server are skipped.
+   */
+  private boolean needsLabels(Entity entity) {
+    String imageUrl = CommentSchema.getImageUrl(entity);
+    return imageUrl != null
+        && imageUrl.startsWith("http")
+        && CommentSchema.getImageLabels(entity).isEmpty();
+  }
+
+  /**
+   * Claims the job for this invocation until {@code claimedUntil}, unless another invocation
+   * holds an unexpired claim.
+   *
+   * @param reset whether to start a fresh pass instead of resuming the stored one
+   * @return the claimed job, or null if another invocation is running it
+   */
+  private Entity claimJob(String claim, boolean reset, long claimedUntil) {
+    Transaction txn = dataStore.beginTransaction();
+    try {
+      Entity job;
+      try {
+        job = dataStore.get(txn, JOB_KEY);
+        Long otherClaimedUntil = (Long) job.getProperty("claimedUntil");
+        if (job.getProperty("claim") != null
+            && otherClaimedUntil != null
+            && otherClaimedUntil > System.currentTimeMillis()) {
+          return null;
+        }
+      } catch (EntityNotFoundException e) {
+        job = newJob();
+      }
+      if (reset) {
+        job = newJob();
+      }
+      job.setUnindexedProperty("claim", claim);
+      job.setUnindexedProperty("claimedUntil", claimedUntil);
+      dataStore.put(txn, job);
+      txn.commit();
+      return job;
+    } catch (ConcurrentModificationException e) {
+      // Another invocation claimed it at the same time.
+      return null;
+    } finally {
+      if (txn.isActive()) {
+        txn.rollback();
+      }
+    }
+  }
+
+  /**
+   * Stores the job's progress if this invocation still holds its claim.
+   *
+   * @return false if the claim was lost, in which case nothing was stored
+   */
+  private boolean checkpoint(Entity job) {
+    Transaction txn = dataStore.beginTransaction();
+    try {
+      if (!isClaimedBy(dataStore.get(txn, JOB_KEY), (String) job.getProperty("claim"))) {
+        return false;
+      }
+      dataStore.put(txn, job);
+      txn.commit();
+      return true;
+    } catch (EntityNotFoundException | ConcurrentModificationException e) {
+      return false;
+    } finally {
+      if (txn.isActive()) {
+        txn.rollback();
+      }
+    }
+  }
+
+  /**
+   * Gives up the claim, so the next invocation doesn't have to wait for it to expire.
+   */
+  private void releaseJob(String claim) {
+    Transaction txn = dataStore.beginTransaction();
+    try {
+      Entity job = dataStore.get(txn, JOB_KEY);
+      if (isClaimedBy(job, claim)) {
+        job.setUnindexedProperty("claim", null);
+        job.setUnindexedProperty("claimedUntil", null);
+        dataStore.put(txn, job);
+        txn.commit();
+      }
+    } catch (EntityNotFoundException | ConcurrentModificationException e) {
+      // The claim expires by itself.
+    } finally {
+      if (txn.isActive()) {
+        txn.rollback();
+      }
+    }
+  }
+
+  private static boolean isClaimedBy(Entity job, String claim) {
+    return claim.equals(job.getProperty("claim"));
+  }
+
+  private Entity newJob() {
+    Entity job = new Entity(JOB_KEY);
+    job.setUnindexedProperty("cursor", null);
+    job.setProperty("scanned", 0L);
+    job.setProperty("labeled", 0L);
+    job.setProperty("migrated", 0L);
+    job.setProperty("passes", 0L);
+    job.setProperty("updated", System.currentTimeMillis());
+    return job;
+  }
+
+  /**
+   * Returns a counter of the job, or 0 for counters added after the job was first checkpointed.
+   */
+  private static long getCount(Entity job, String property) {
+    Long count = (Long) job.getProperty(property);
+    return count == null ? 0 : count;
+  }
+
+  private int clamp(int value, int max) {
+    return Math.max(1, Math.min(value, max));
+  }
+}
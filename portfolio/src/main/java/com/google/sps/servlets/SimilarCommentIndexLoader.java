@@ -0,0 +1,168 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.sps.data.CommentSchema;
+import com.google.sps.data.SimilarCommentIndex;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Rebuilds the {@link SimilarCommentIndex} from Datastore when the app starts, and refreshes it
+ * every {@code REFRESH_MINUTES} after that. Every instance keeps its own index, so the refresh is
+ * what brings in comments labeled and archived by other instances. The timestamp range of all
+ * comments is split into {@code SLICES} slices that are read in parallel.
+ */
+@WebListener
+public class SimilarCommentIndexLoader implements ServletContextListener {
+
+  private static final int SLICES = 8;
+  private static final int CHUNK_SIZE = 500;
+  private static final long REFRESH_MINUTES = Long.getLong("similarComments.refreshMinutes", 10);
+
+  private DatastoreService dataStore = DatastoreServiceFactory.getDatastoreService();
+  private ScheduledExecutorService refresher;
+
+  @Override
+  public void contextInitialized(ServletContextEvent event) {
+    refresh();
+    refresher = Executors.newSingleThreadScheduledExecutor();
+    refresher.scheduleWithFixedDelay(() -> {
+      // An exception would cancel all later refreshes.
+      try {
+        refresh();
+      } catch (RuntimeException e) {
+        System.err.println("Error refreshing similar comments index: " + e);
+      }
+    }, REFRESH_MINUTES, REFRESH_MINUTES, TimeUnit.MINUTES);
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent event) {
+    if (refresher != null) {
+      refresher.shutdownNow();
+    }
+  }
+
+  /**
+   * Adds or updates the signatures of all stored comments, then drops comments that were indexed
+   * before the refresh started but are no longer stored. Comments indexed while the refresh runs
+   * are kept even if the slice they belong to was read before they were written.
+   */
+  private void refresh() {
+    SimilarCommentIndex index = SimilarCommentIndex.getInstance();
+    Set<Long> indexedBefore = index.ids();
+    Set<Long> stored = ConcurrentHashMap.newKeySet();
+    if (!loadAll(stored)) {
+      // Some comments may be missing from this read, so nothing is dropped.
+      return;
+    }
+    indexedBefore.removeAll(stored);
+    for (long id : indexedBefore) {
+      index.remove(id);
+    }
+  }
+
+  /**
+   * Adds the signatures of all comments to the index, collecting their ids in {@code stored}.
+   *
+   * @return whether every slice was read
+   */
+  private boolean loadAll(Set<Long> stored) {
+    Entity oldest = first(SortDirection.ASCENDING);
+    Entity newest = first(SortDirection.DESCENDING);
+    if (oldest == null) {
+      return true;
+    }
+
+    long start = CommentSchema.getTimestamp(oldest);
+    long end = CommentSchema.getTimestamp(newest) + 1;
+    long sliceLength = Math.max(1, (end - start + SLICES - 1) / SLICES);
+
+    ExecutorService executor = Executors.newFixedThreadPool(SLICES);
+    try {
+      List<Future<Integer>> slices = new ArrayList<>(SLICES);
+      for (long from = start; from < end; from += sliceLength) {
+        long sliceStart = from;
+        long sliceEnd = Math.min(from + sliceLength, end);
+        slices.add(executor.submit(() -> loadSlice(sliceStart, sliceEnd, stored)));
+      }
+      for (Future<Integer> slice : slices) {
+        slice.get();
+      }
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      // Comments that didn't load are simply not suggested until the next refresh.
+      System.err.println("Error loading similar comments index: " + e.getCause());
+      return false;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Adds the signatures of all comments with {@code start <= timestamp < end}, collecting their
+   * ids in {@code stored}.
+   *
+   * @return the number of comments indexed
+   */
+  private int loadSlice(long start, long end, Set<Long> stored) {
+    Query query = new Query(CommentSchema.KIND).setFilter(CompositeFilterOperator.and(
+        new FilterPredicate(CommentSchema.TIMESTAMP, FilterOperator.GREATER_THAN_OR_EQUAL, start),
+        new FilterPredicate(CommentSchema.TIMESTAMP, FilterOperator.LESS_THAN, end)));
+
+    SimilarCommentIndex index = SimilarCommentIndex.getInstance();
+    int indexed = 0;
+    for (Entity entity :
+        dataStore.prepare(query).asIterable(FetchOptions.Builder.withChunkSize(CHUNK_SIZE))) {
+      int[] signature = CommentSchema.getMinHash(entity);
+      if (signature != null) {
+        index.add(entity.getKey().getId(), signature);
+        stored.add(entity.getKey().getId());
+        indexed++;
+      }
+    }
+    return indexed;
+  }
+
+  private Entity first(SortDirection direction) {
+    Query query = new Query(CommentSchema.KIND).addSort(CommentSchema.TIMESTAMP, direction);
+    List<Entity> results = dataStore.prepare(query).asList(FetchOptions.Builder.withLimit(1));
+    return results.isEmpty() ? null : results.get(0);
+  }
+}
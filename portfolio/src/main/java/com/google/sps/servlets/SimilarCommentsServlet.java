@@ -0,0 +1,64 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.sps.data.SimilarCommentIndex;
+import java.io.IOException;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that returns the ids of comments whose images are most similar to the image of the
+ * given comment. Answered from the in-memory {@link SimilarCommentIndex} without touching
+ * Datastore.
+ */
+@WebServlet("/comments/similar")
+public class SimilarCommentsServlet extends HttpServlet {
+
+  private static final int DEFAULT_LIMIT = 5;
+
+  private SimilarCommentIndex index = SimilarCommentIndex.getInstance();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String id = request.getParameter("id");
+    if (id == null) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing id");
+      return;
+    }
+    long commentId;
+    int limit;
+    try {
+      commentId = Long.parseLong(id);
+      limit = AdminRequests.getIntParameter(request, "limit", DEFAULT_LIMIT);
+    } catch (NumberFormatException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "id and limit must be numbers");
+      return;
+    }
+    if (limit < 0) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "limit cannot be negative");
+      return;
+    }
+
+    List<SimilarCommentIndex.Match> matches = index.findSimilar(commentId, limit);
+
+    response.setContentType("application/json;");
+    response.getWriter().println(String.format("{ \"similar\": %s }", new Gson().toJson(matches)));
+  }
+}
@@ -56,13 +56,83 @@ function getCommentsContent() {
         createListElement(commentsJson.comments[i].comment, commentsJson.comments[i].username));
       const imageUrl = commentsJson.comments[i].imageUrl
       if (imageUrl != null) {
-        commentsListElement.innerHTML += `<img src="${imageUrl}">`;
+        // Appended rather than assigned to innerHTML, which would drop the buttons' listeners.
+        commentsListElement.insertAdjacentHTML('beforeend', `<img src="${imageUrl}">`);
         addImageLabels(commentsJson.comments[i].imageLabels, commentsListElement)
       }
+      addThreadControls(commentsJson.comments[i], commentsListElement);
     }
   });
 }
 
+/*
+ * Adds buttons to load a top-level comment's replies, which the feed leaves out, and to reply.
+ */
+function addThreadControls(comment, commentsListElement) {
+  const repliesElement = document.createElement('ol');
+  const showRepliesButton = document.createElement('button');
+  showRepliesButton.innerText = 'Show replies';
+  showRepliesButton.addEventListener('click', () => {
+    fetch(`/comments?thread=${encodeURIComponent(comment.path)}`).then((response) => {
+      // Comments written before threading have no thread until the backfill job has upgraded them.
+      return response.ok ? response.json() : {thread: {}};
+    }).then((threadJson) => {
+      repliesElement.innerHTML = '';
+      addReplies(threadJson.thread.replies, repliesElement);
+      if (repliesElement.children.length == 0) {
+        repliesElement.appendChild(document.createTextNode('No replies yet.'));
+      }
+    });
+  });
+  commentsListElement.appendChild(showRepliesButton);
+  commentsListElement.appendChild(createReplyButton(comment.id, repliesElement));
+  commentsListElement.appendChild(repliesElement);
+}
+
+/*
+ * Adds a thread's replies, and theirs in turn, as nested lists.
+ */
+function addReplies(replies, repliesElement) {
+  for (const reply of replies || []) {
+    const replyElement = createListElement(reply.comment, reply.username);
+    if (reply.imageUrl != null) {
+      replyElement.insertAdjacentHTML('beforeend', `<img src="${reply.imageUrl}">`);
+      addImageLabels(reply.imageLabels, replyElement);
+    }
+    const nestedRepliesElement = document.createElement('ol');
+    replyElement.appendChild(createReplyButton(reply.id, nestedRepliesElement));
+    replyElement.appendChild(nestedRepliesElement);
+    addReplies(reply.replies, nestedRepliesElement);
+    repliesElement.appendChild(replyElement);
+  }
+}
+
+/*
+ * Creates a button that shows a form for replying to the comment with the given id.
+ */
+function createReplyButton(parentId, repliesElement) {
+  const replyButton = document.createElement('button');
+  replyButton.innerText = 'Reply';
+  replyButton.addEventListener('click', () => {
+    // Upload URLs can only be used once, so get a fresh one for each form.
+    fetch('/commentForm').then(response => response.json()).then(userJson => {
+      if (!userJson.userEmail) {
+        window.location.href = userJson.url;
+        return;
+      }
+      repliesElement.insertAdjacentHTML('afterbegin', `
+        <form method="POST" enctype="multipart/form-data" action="${userJson.uploadUrl}">
+          <input type="hidden" name="parentId" value="${parentId}">
+          <textarea name="text-input" placeholder="Write a reply" rows="3" cols="50"></textarea>
+          <br/>
+          <input type="file" name="imageFile">
+          <input type="submit" value="Reply"/>
+        </form>`);
+    });
+  });
+  return replyButton;
+}
+
 /*
  * Creates an a paragraph of image text labels.
  */
@@ -74,7 +144,7 @@ function addImageLabels(imageLabels, commentsListElement) {
     }
     // added substring to remove the extra space and comma from concating
     imageLabelsText = imageLabelsText.substring(0, imageLabelsText.length - 2) + " image </p>"
-    commentsListElement.innerHTML += imageLabelsText
+    commentsListElement.insertAdjacentHTML('beforeend', imageLabelsText)
   }
 }
 
@@ -0,0 +1,108 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates synthetic calendars for benchmarks. The same settings and seed always produce the
+ * same events, so runs can be compared with each other.
+ *
+ * <p>{@code density} is the fraction of the day each attendee spends in events on average,
+ * counting overlaps twice; the higher it is, the more events overlap.
+ */
+public final class CalendarGenerator {
+  private long seed = 42;
+  private int attendees = 100;
+  private int eventsPerAttendee = 8;
+  private double density = 0.3;
+  private int attendeesPerEvent = 2;
+
+  public CalendarGenerator seed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  public CalendarGenerator attendees(int attendees) {
+    this.attendees = attendees;
+    return this;
+  }
+
+  public CalendarGenerator eventsPerAttendee(int eventsPerAttendee) {
+    this.eventsPerAttendee = eventsPerAttendee;
+    return this;
+  }
+
+  public CalendarGenerator density(double density) {
+    this.density = density;
+    return this;
+  }
+
+  public CalendarGenerator attendeesPerEvent(int attendeesPerEvent) {
+    this.attendeesPerEvent = attendeesPerEvent;
+    return this;
+  }
+
+  /**
+   * Returns the name of attendee {@code i}.
+   */
+  public static String attendee(int i) {
+    return "Person " + i;
+  }
+
+  /**
+   * Returns {@code attendees * eventsPerAttendee / attendeesPerEvent} events, each with
+   * {@code attendeesPerEvent} different attendees, or all of them if there are fewer.
+   */
+  public List<Event> generate() {
+    Random random = new Random(seed);
+    int perEvent = Math.min(attendeesPerEvent, attendees);
+    int count = Math.max(1, (int) ((long) attendees * eventsPerAttendee / perEvent));
+    int meanDuration = Math.max(1,
+        (int) (density * TimeRange.WHOLE_DAY.duration() / eventsPerAttendee));
+
+    List<Event> events = new ArrayList<>(count);
+    Set<String> eventAttendees = new HashSet<>();
+    for (int i = 0; i < count; i++) {
+      int duration =
+          Math.min(1 + random.nextInt(2 * meanDuration), TimeRange.WHOLE_DAY.duration());
+      int start = random.nextInt(TimeRange.WHOLE_DAY.duration() - duration + 1);
+
+      eventAttendees.clear();
+      while (eventAttendees.size() < perEvent) {
+        eventAttendees.add(attendee(random.nextInt(attendees)));
+      }
+      events.add(new Event(
+          "Event " + i, TimeRange.fromStartDuration(start, duration), eventAttendees));
+    }
+    return events;
+  }
+
+  /**
+   * Returns a request for {@code size} different random attendees, or all of them if there are
+   * fewer.
+   */
+  public MeetingRequest request(Random random, int size, long duration) {
+    Set<String> requestAttendees = new HashSet<>();
+    while (requestAttendees.size() < Math.min(size, attendees)) {
+      requestAttendees.add(attendee(random.nextInt(attendees)));
+    }
+    return new MeetingRequest(requestAttendees, duration);
+  }
+}
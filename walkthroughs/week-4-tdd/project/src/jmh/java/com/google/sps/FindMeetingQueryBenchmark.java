@@ -0,0 +1,114 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the meeting query engines on generated calendars of 10 to a million events. The
+ * {@code unindexed} benchmark goes through {@code query(Collection<Event>, MeetingRequest)} and
+ * so includes building the index; the others query a prebuilt one.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FindMeetingQueryBenchmark {
+  private static final int EVENTS_PER_ATTENDEE = 8;
+  // A power of two, so the next request can be picked with a mask.
+  private static final int REQUESTS = 256;
+
+  private static final FindMeetingQuery FIND_MEETING_QUERY = new FindMeetingQuery();
+  private static final BitsetMeetingQuery BITSET_MEETING_QUERY = new BitsetMeetingQuery();
+  private static final TableMeetingQuery TABLE_MEETING_QUERY = new TableMeetingQuery();
+
+  @Param({"10", "1000", "100000", "1000000"})
+  public int events;
+
+  @Param({"2", "20"})
+  public int requestSize;
+
+  @Param({"0.3"})
+  public double density;
+
+  @Param({"2"})
+  public int attendeesPerEvent;
+
+  private List<Event> calendar;
+  private EventIndex index;
+  private BusyMasks masks;
+  private EventTable table;
+  private MeetingRequest[] requests;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    CalendarGenerator generator = new CalendarGenerator()
+        .attendees(Math.max(1, events * attendeesPerEvent / EVENTS_PER_ATTENDEE))
+        .eventsPerAttendee(EVENTS_PER_ATTENDEE)
+        .density(density)
+        .attendeesPerEvent(attendeesPerEvent);
+    calendar = generator.generate();
+    index = EventIndex.of(calendar);
+    masks = BusyMasks.of(index);
+    table = EventTable.of(calendar);
+
+    Random random = new Random(7);
+    requests = new MeetingRequest[REQUESTS];
+    for (int i = 0; i < REQUESTS; i++) {
+      requests[i] = generator.request(random, requestSize, 30);
+    }
+  }
+
+  private MeetingRequest nextRequest() {
+    return requests[next++ & (REQUESTS - 1)];
+  }
+
+  @Benchmark
+  public Collection<TimeRange> unindexed() {
+    return FIND_MEETING_QUERY.query(calendar, nextRequest());
+  }
+
+  @Benchmark
+  public Collection<TimeRange> indexed() {
+    return FIND_MEETING_QUERY.query(index, nextRequest());
+  }
+
+  @Benchmark
+  public Collection<TimeRange> bitset() {
+    return BITSET_MEETING_QUERY.query(masks, nextRequest());
+  }
+
+  @Benchmark
+  public Collection<TimeRange> table() {
+    return TABLE_MEETING_QUERY.query(table, nextRequest());
+  }
+}
@@ -0,0 +1,92 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link TimeRange} operations over the ranges of a generated calendar.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimeRangeBenchmark {
+  private static final TimeRange PROBE =
+      TimeRange.fromStartEnd(TimeRange.getTimeInMinutes(9, 0), TimeRange.getTimeInMinutes(10, 0),
+          false);
+
+  @Param({"10", "1000", "100000", "1000000"})
+  public int size;
+
+  private TimeRange[] ranges;
+
+  @Setup
+  public void setUp() {
+    List<Event> calendar = new CalendarGenerator()
+        .attendees(Math.max(1, size / 4))
+        .eventsPerAttendee(4)
+        .attendeesPerEvent(1)
+        .generate();
+    ranges = new TimeRange[calendar.size()];
+    for (int i = 0; i < ranges.length; i++) {
+      ranges[i] = calendar.get(i).getWhen();
+    }
+  }
+
+  @Benchmark
+  public int overlaps() {
+    int count = 0;
+    for (TimeRange range : ranges) {
+      if (range.overlaps(PROBE)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Benchmark
+  public int contains() {
+    int count = 0;
+    for (TimeRange range : ranges) {
+      if (PROBE.contains(range)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Benchmark
+  public TimeRange[] sortByStart() {
+    TimeRange[] sorted = ranges.clone();
+    Arrays.sort(sorted, TimeRange.ORDER_BY_START);
+    return sorted;
+  }
+}
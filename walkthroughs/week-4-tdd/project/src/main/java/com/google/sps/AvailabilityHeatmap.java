@@ -0,0 +1,130 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Counts how many of a group of attendees are free at each point of the day, rather than whether
+ * all of them are.
+ *
+ * <p>Each attendee's busy intervals add one at their start and take one away at their end in a
+ * difference array of the day's minutes, and one pass of running sums turns that into the number
+ * busy at every minute. This is O(intervals + 1440) for any number of attendees and allocates
+ * nothing beyond the result, which is returned as runs of buckets with the same count.
+ */
+public final class AvailabilityHeatmap {
+  private static final int MINUTES = TimeRange.WHOLE_DAY.duration();
+  private static final ThreadLocal<int[]> SCRATCH =
+      ThreadLocal.withInitial(() -> new int[MINUTES + 1]);
+
+  /**
+   * A span of the day throughout which the same number of attendees is free.
+   */
+  public static final class Bucket {
+    private final TimeRange when;
+    private final int free;
+
+    Bucket(TimeRange when, int free) {
+      this.when = when;
+      this.free = free;
+    }
+
+    public TimeRange getWhen() {
+      return when;
+    }
+
+    /**
+     * Returns the number of attendees free for the whole of every bucket in the span.
+     */
+    public int getFree() {
+      return free;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Bucket
+          && when.equals(((Bucket) other).when)
+          && free == ((Bucket) other).free;
+    }
+
+    @Override
+    public int hashCode() {
+      return when.hashCode() * 31 + free;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s: %d free", when, free);
+    }
+  }
+
+  // Disallow instances.
+  private AvailabilityHeatmap() {}
+
+  /**
+   * Splits the day into buckets of {@code granularity} minutes, the last one possibly shorter,
+   * and returns the number of {@code attendees} free for the whole of each. Neighbouring buckets
+   * with the same count are joined into one, so the buckets returned cover the day in order.
+   */
+  public static List<Bucket> query(
+      EventIndex index, Collection<String> attendees, int granularity) {
+    if (granularity <= 0) {
+      throw new IllegalArgumentException("granularity must be positive");
+    }
+
+    Collection<String> people = attendees instanceof Set
+        ? attendees
+        : new HashSet<>(attendees);
+    int[] busy = SCRATCH.get();
+    Arrays.fill(busy, 0);
+    for (String attendee : people) {
+      int[] intervals = index.getBusyIntervals(attendee);
+      for (int i = 0; i < intervals.length; i += 2) {
+        busy[intervals[i]]++;
+        busy[intervals[i + 1]]--;
+      }
+    }
+
+    List<Bucket> buckets = new ArrayList<>();
+    int runStart = 0;
+    int runFree = -1;
+    int running = 0;
+    for (int bucketStart = 0; bucketStart < MINUTES; bucketStart += granularity) {
+      // The busiest minute decides how many are free for the whole bucket.
+      int bucketEnd = Math.min(bucketStart + granularity, MINUTES);
+      int mostBusy = 0;
+      for (int minute = bucketStart; minute < bucketEnd; minute++) {
+        running += busy[minute];
+        mostBusy = Math.max(mostBusy, running);
+      }
+      int free = people.size() - mostBusy;
+      if (free != runFree) {
+        if (runFree >= 0) {
+          buckets.add(new Bucket(TimeRange.fromStartEnd(runStart, bucketStart, false), runFree));
+        }
+        runStart = bucketStart;
+        runFree = free;
+      }
+    }
+    buckets.add(new Bucket(TimeRange.fromStartEnd(runStart, MINUTES, false), runFree));
+    return buckets;
+  }
+}
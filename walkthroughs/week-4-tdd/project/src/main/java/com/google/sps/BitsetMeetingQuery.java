@@ -0,0 +1,109 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Finds meeting times by OR-ing the attendees' {@link BusyMasks} and scanning the result a word
+ * at a time for runs of free minutes. A query touches 23 longs per attendee no matter how many
+ * events they have, and allocates nothing but the result.
+ */
+public final class BitsetMeetingQuery implements MeetingQueryEngine {
+  // Minutes past the end of the day in the last word are marked busy, so every free run ends by
+  // END_OF_DAY + 1 and the scans below never run off the array.
+  private static final long PAST_END_OF_DAY = -1L << (BusyMasks.MINUTES % Long.SIZE);
+
+  private static final ThreadLocal<long[]> SCRATCH =
+      ThreadLocal.withInitial(() -> new long[BusyMasks.WORDS]);
+
+  @Override
+  public Collection<TimeRange> query(Collection<Event> events, MeetingRequest request) {
+    return query(BusyMasks.of(events), request);
+  }
+
+  public Collection<TimeRange> query(BusyMasks masks, MeetingRequest request) {
+    Collection<String> reqAttendees = request.getAttendees();
+    long reqDuration = request.getDuration();
+
+    // corner case: no attendees in the request
+    if (reqAttendees.isEmpty() && request.getOptionalAttendees().isEmpty()) {
+      return Arrays.asList(TimeRange.WHOLE_DAY);
+    }
+
+    // corner case: requested duration more than the day duration
+    if (reqDuration > TimeRange.WHOLE_DAY.duration()) {
+      return Arrays.asList();
+    }
+
+    long[] busy = SCRATCH.get();
+    Arrays.fill(busy, 0L);
+    for (String attendee : reqAttendees) {
+      long[] mask = masks.getMask(attendee);
+      if (mask != null) {
+        for (int word = 0; word < BusyMasks.WORDS; word++) {
+          busy[word] |= mask[word];
+        }
+      }
+    }
+    busy[BusyMasks.WORDS - 1] |= PAST_END_OF_DAY;
+
+    List<TimeRange> possibleMeetingTimes = new ArrayList<>();
+    int freeStart = nextClearBit(busy, 0);
+    while (freeStart < BusyMasks.MINUTES) {
+      int freeEnd = nextSetBit(busy, freeStart);
+      if (freeEnd - freeStart >= reqDuration) {
+        possibleMeetingTimes.add(TimeRange.fromStartEnd(freeStart, freeEnd, false));
+      }
+      freeStart = nextClearBit(busy, freeEnd);
+    }
+    return OptionalAttendeeCoverage.query(masks.getIndex(), request, possibleMeetingTimes);
+  }
+
+  /**
+   * Returns the first set bit at or after {@code from}. The last word always has a set bit past
+   * the end of the day, so one is always found.
+   */
+  private static int nextSetBit(long[] bits, int from) {
+    int word = from >>> 6;
+    long remaining = bits[word] & (-1L << from);
+    while (remaining == 0) {
+      remaining = bits[++word];
+    }
+    return word * Long.SIZE + Long.numberOfTrailingZeros(remaining);
+  }
+
+  /**
+   * Returns the first clear bit at or after {@code from}, or a value of at least
+   * {@link BusyMasks#MINUTES} if there is none.
+   */
+  private static int nextClearBit(long[] bits, int from) {
+    int word = from >>> 6;
+    if (word >= bits.length) {
+      return from;
+    }
+    long remaining = ~bits[word] & (-1L << from);
+    while (remaining == 0) {
+      if (++word == bits.length) {
+        return word * Long.SIZE;
+      }
+      remaining = ~bits[word];
+    }
+    return word * Long.SIZE + Long.numberOfTrailingZeros(remaining);
+  }
+}
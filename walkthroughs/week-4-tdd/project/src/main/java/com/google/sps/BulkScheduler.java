@@ -0,0 +1,470 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Places many meetings at once so that no attendee is in two of them at the same time, and each
+ * one fits around its attendees' existing events. Optional attendees are ignored.
+ *
+ * <p>The search is a backtracking one over bitsets of the minutes each meeting could start at.
+ * It always places the meeting with the fewest possible starts next, tries the first and last
+ * start of each run of possible starts (so placed meetings fragment the day as little as
+ * possible), and finally tries leaving the meeting out. Branches that can't beat the best
+ * schedule found so far are cut. The first levels of the search run in parallel on a
+ * {@link ForkJoinPool}. When the deadline passes, the best schedule found so far is returned.
+ *
+ * <p>A schedule is better when the priorities of the meetings it places, each plus one, add up
+ * to more: higher-priority meetings win, and among equals, placing more meetings wins.
+ */
+public final class BulkScheduler {
+  private static final int WORDS = BusyMasks.WORDS;
+  // Levels of the search tree whose branches are forked rather than explored in turn.
+  private static final int PARALLEL_DEPTH = 2;
+  // Starts tried per meeting, besides leaving it out.
+  private static final int MAX_CANDIDATES = 6;
+
+  /**
+   * A meeting to place, and how much it matters compared with the others.
+   */
+  public static final class Meeting {
+    // Keeps the summed weights of a schedule, each priority plus one, well within an int.
+    public static final int MAX_PRIORITY = 1000;
+
+    private final MeetingRequest request;
+    private final int priority;
+
+    /**
+     * @param priority from zero to {@link #MAX_PRIORITY}; higher-priority meetings are placed in
+     *     preference
+     */
+    public Meeting(MeetingRequest request, int priority) {
+      if (priority < 0 || priority > MAX_PRIORITY) {
+        throw new IllegalArgumentException(
+            "priority must be between 0 and " + MAX_PRIORITY + ": " + priority);
+      }
+      this.request = request;
+      this.priority = priority;
+    }
+
+    public MeetingRequest getRequest() {
+      return request;
+    }
+
+    public int getPriority() {
+      return priority;
+    }
+  }
+
+  /**
+   * The slot given to each meeting, in the order the meetings were passed in.
+   */
+  public static final class Schedule {
+    private final List<TimeRange> slots;
+    private final boolean timedOut;
+
+    private Schedule(List<TimeRange> slots, boolean timedOut) {
+      this.slots = Collections.unmodifiableList(slots);
+      this.timedOut = timedOut;
+    }
+
+    /**
+     * Returns the slot of each meeting, or null for meetings that couldn't be placed.
+     */
+    public List<TimeRange> getSlots() {
+      return slots;
+    }
+
+    /**
+     * Returns whether every meeting was placed.
+     */
+    public boolean isComplete() {
+      return !slots.contains(null);
+    }
+
+    /**
+     * Returns whether the search ran out of time, in which case a better schedule may exist.
+     */
+    public boolean isTimedOut() {
+      return timedOut;
+    }
+  }
+
+  private final ForkJoinPool pool;
+
+  public BulkScheduler(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Places {@code meetings} around the events in {@code masks}, taking at most about
+   * {@code timeoutMillis}.
+   */
+  public Schedule schedule(BusyMasks masks, List<Meeting> meetings, long timeoutMillis) {
+    Search search = new Search(masks, meetings, System.nanoTime() + timeoutMillis * 1000000);
+    pool.invoke(new Branch(search, search.initialState(), 0));
+
+    Solution best = search.best.get();
+    List<TimeRange> slots = new ArrayList<>(meetings.size());
+    for (int meeting = 0; meeting < meetings.size(); meeting++) {
+      int start = best.starts[meeting];
+      slots.add(start < 0 ? null : TimeRange.fromStartDuration(start, search.durations[meeting]));
+    }
+    return new Schedule(slots, search.timedOut);
+  }
+
+  /**
+   * The fixed inputs of one call to {@link #schedule}, and the best schedule found so far.
+   */
+  private static final class Search {
+    private final int[][] attendees;
+    private final long[][] busy;
+    private final int[] durations;
+    private final int[] weights;
+    private final int attendeeCount;
+    private final int totalWeight;
+    private final long deadline;
+    private final AtomicReference<Solution> best;
+
+    private volatile boolean stopped;
+    private volatile boolean timedOut;
+
+    Search(BusyMasks masks, List<Meeting> meetings, long deadline) {
+      int count = meetings.size();
+      attendees = new int[count][];
+      busy = new long[count][];
+      durations = new int[count];
+      weights = new int[count];
+      this.deadline = deadline;
+
+      Map<String, Integer> ids = new HashMap<>();
+      int total = 0;
+      for (int meeting = 0; meeting < count; meeting++) {
+        MeetingRequest request = meetings.get(meeting).getRequest();
+        busy[meeting] = new long[WORDS];
+        attendees[meeting] = new int[request.getAttendees().size()];
+        int i = 0;
+        for (String attendee : request.getAttendees()) {
+          attendees[meeting][i++] = ids.computeIfAbsent(attendee, key -> ids.size());
+          long[] mask = masks.getMask(attendee);
+          if (mask != null) {
+            for (int word = 0; word < WORDS; word++) {
+              busy[meeting][word] |= mask[word];
+            }
+          }
+        }
+        durations[meeting] = (int) Math.min(
+            Math.max(request.getDuration(), 1), TimeRange.WHOLE_DAY.duration() + 1);
+        weights[meeting] = meetings.get(meeting).getPriority() + 1;
+        total += weights[meeting];
+      }
+      attendeeCount = ids.size();
+      totalWeight = total;
+
+      int[] noStarts = new int[count];
+      Arrays.fill(noStarts, -1);
+      best = new AtomicReference<>(new Solution(0, noStarts));
+    }
+
+    State initialState() {
+      State state = new State(attendees.length, attendeeCount);
+      state.remainingWeight = totalWeight;
+      return state;
+    }
+
+    /**
+     * Returns true once the search should stop, either because time is up or because a
+     * schedule placing every meeting has been found.
+     */
+    boolean shouldStop() {
+      if (!stopped && System.nanoTime() > deadline) {
+        timedOut = true;
+        stopped = true;
+      }
+      return stopped;
+    }
+
+    void offer(State state) {
+      Solution current = best.get();
+      while (state.weight > current.weight) {
+        Solution candidate = new Solution(state.weight, state.starts.clone());
+        if (best.compareAndSet(current, candidate)) {
+          if (state.weight == totalWeight) {
+            stopped = true;
+          }
+          return;
+        }
+        current = best.get();
+      }
+    }
+
+    /**
+     * Sets {@code starts} to the minutes at which {@code meeting} could start in {@code state}.
+     */
+    void possibleStarts(State state, int meeting, long[] starts) {
+      long[] taken = busy[meeting];
+      for (int word = 0; word < WORDS; word++) {
+        long occupied = taken[word];
+        for (int attendee : attendees[meeting]) {
+          occupied |= state.occupied[attendee][word];
+        }
+        starts[word] = ~occupied;
+      }
+      // Minutes past the end of the day are never free.
+      starts[WORDS - 1] &= ~(-1L << (BusyMasks.MINUTES % Long.SIZE));
+
+      // Keep the minutes followed by a free run of the meeting's duration, doubling the length
+      // checked on each pass.
+      int checked = 1;
+      while (checked < durations[meeting]) {
+        int shift = Math.min(checked, durations[meeting] - checked);
+        andShiftedDown(starts, shift);
+        checked += shift;
+      }
+    }
+  }
+
+  /**
+   * A point in the search: which meetings have been decided and where they were put.
+   */
+  private static final class State {
+    // Minutes taken per attendee by meetings placed so far.
+    private final long[][] occupied;
+    // Start of each meeting, or -1 if it was left out or isn't decided yet.
+    private final int[] starts;
+    private final boolean[] decided;
+    private int weight;
+    private int remainingWeight;
+
+    State(int meetings, int attendees) {
+      occupied = new long[attendees][WORDS];
+      starts = new int[meetings];
+      decided = new boolean[meetings];
+      Arrays.fill(starts, -1);
+    }
+
+    State copy() {
+      State copy = new State(starts.length, occupied.length);
+      for (int attendee = 0; attendee < occupied.length; attendee++) {
+        System.arraycopy(occupied[attendee], 0, copy.occupied[attendee], 0, WORDS);
+      }
+      System.arraycopy(starts, 0, copy.starts, 0, starts.length);
+      System.arraycopy(decided, 0, copy.decided, 0, decided.length);
+      copy.weight = weight;
+      copy.remainingWeight = remainingWeight;
+      return copy;
+    }
+
+    void place(Search search, int meeting, int start) {
+      for (int attendee : search.attendees[meeting]) {
+        toggleRange(occupied[attendee], start, start + search.durations[meeting]);
+      }
+      starts[meeting] = start;
+      weight += search.weights[meeting];
+    }
+
+    void unplace(Search search, int meeting) {
+      int start = starts[meeting];
+      // Meetings that share an attendee never overlap, so the bits being cleared were all set
+      // by this meeting.
+      for (int attendee : search.attendees[meeting]) {
+        toggleRange(occupied[attendee], start, start + search.durations[meeting]);
+      }
+      starts[meeting] = -1;
+      weight -= search.weights[meeting];
+    }
+  }
+
+  private static final class Solution {
+    private final int weight;
+    private final int[] starts;
+
+    Solution(int weight, int[] starts) {
+      this.weight = weight;
+      this.starts = starts;
+    }
+  }
+
+  /**
+   * Explores the search tree below {@code state}, forking its children while it is near the
+   * root.
+   */
+  private static final class Branch extends RecursiveAction {
+    private final Search search;
+    private final State state;
+    private final int depth;
+
+    Branch(Search search, State state, int depth) {
+      this.search = search;
+      this.state = state;
+      this.depth = depth;
+    }
+
+    @Override
+    protected void compute() {
+      explore(state, depth);
+    }
+
+    private void explore(State state, int depth) {
+      if (search.shouldStop()
+          || state.weight + state.remainingWeight <= search.best.get().weight) {
+        return;
+      }
+
+      // Pick the undecided meeting with the fewest possible starts.
+      long[] starts = new long[WORDS];
+      long[] fewestStarts = new long[WORDS];
+      int meeting = -1;
+      int fewest = Integer.MAX_VALUE;
+      for (int candidate = 0; candidate < state.decided.length; candidate++) {
+        if (state.decided[candidate]) {
+          continue;
+        }
+        search.possibleStarts(state, candidate, starts);
+        int count = 0;
+        for (long word : starts) {
+          count += Long.bitCount(word);
+        }
+        if (count < fewest || (count == fewest
+            && search.weights[candidate] > search.weights[meeting])) {
+          meeting = candidate;
+          fewest = count;
+          long[] swap = fewestStarts;
+          fewestStarts = starts;
+          starts = swap;
+        }
+      }
+      if (meeting < 0) {
+        search.offer(state);
+        return;
+      }
+
+      int[] candidates = candidateStarts(fewestStarts);
+      state.decided[meeting] = true;
+      state.remainingWeight -= search.weights[meeting];
+
+      if (depth < PARALLEL_DEPTH) {
+        List<Branch> branches = new ArrayList<>(candidates.length + 1);
+        for (int start : candidates) {
+          State child = state.copy();
+          child.place(search, meeting, start);
+          branches.add(new Branch(search, child, depth + 1));
+        }
+        branches.add(new Branch(search, state.copy(), depth + 1));
+        invokeAll(branches);
+      } else {
+        for (int start : candidates) {
+          state.place(search, meeting, start);
+          explore(state, depth + 1);
+          state.unplace(search, meeting);
+        }
+        // Finally, leave the meeting out.
+        explore(state, depth + 1);
+      }
+
+      state.remainingWeight += search.weights[meeting];
+      state.decided[meeting] = false;
+    }
+  }
+
+  /**
+   * Returns the first and last start of each run of set bits in {@code starts}, in order, up to
+   * {@link #MAX_CANDIDATES} of them.
+   */
+  private static int[] candidateStarts(long[] starts) {
+    int[] candidates = new int[MAX_CANDIDATES];
+    int count = 0;
+    int from = nextSetBit(starts, 0);
+    while (from >= 0 && count < MAX_CANDIDATES) {
+      int to = nextClearBit(starts, from);
+      candidates[count++] = from;
+      if (to - 1 > from && count < MAX_CANDIDATES) {
+        candidates[count++] = to - 1;
+      }
+      from = nextSetBit(starts, to);
+    }
+    return Arrays.copyOf(candidates, count);
+  }
+
+  /**
+   * Sets each bit {@code i} of {@code bits} to {@code bits[i] & bits[i + shift]}.
+   */
+  private static void andShiftedDown(long[] bits, int shift) {
+    int wordShift = shift >>> 6;
+    int bitShift = shift & 63;
+    for (int word = 0; word < WORDS; word++) {
+      int source = word + wordShift;
+      long low = source < WORDS ? bits[source] : 0;
+      long high = source + 1 < WORDS ? bits[source + 1] : 0;
+      long shifted = bitShift == 0 ? low : (low >>> bitShift) | (high << (Long.SIZE - bitShift));
+      bits[word] &= shifted;
+    }
+  }
+
+  /**
+   * Flips the bits {@code from} (inclusive) to {@code to} (exclusive).
+   */
+  private static void toggleRange(long[] bits, int from, int to) {
+    for (int word = from >>> 6; word <= (to - 1) >>> 6; word++) {
+      long mask = -1L;
+      if (word == from >>> 6) {
+        mask &= -1L << from;
+      }
+      if (word == (to - 1) >>> 6) {
+        mask &= -1L >>> -to;
+      }
+      bits[word] ^= mask;
+    }
+  }
+
+  private static int nextSetBit(long[] bits, int from) {
+    int word = from >>> 6;
+    if (word >= WORDS) {
+      return -1;
+    }
+    long remaining = bits[word] & (-1L << from);
+    while (remaining == 0) {
+      if (++word == WORDS) {
+        return -1;
+      }
+      remaining = bits[word];
+    }
+    return word * Long.SIZE + Long.numberOfTrailingZeros(remaining);
+  }
+
+  private static int nextClearBit(long[] bits, int from) {
+    int word = from >>> 6;
+    if (word >= WORDS) {
+      return from;
+    }
+    long remaining = ~bits[word] & (-1L << from);
+    while (remaining == 0) {
+      if (++word == WORDS) {
+        return WORDS * Long.SIZE;
+      }
+      remaining = ~bits[word];
+    }
+    return word * Long.SIZE + Long.numberOfTrailingZeros(remaining);
+  }
+}
@@ -0,0 +1,126 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Collection;
+
+/**
+ * Walks the busy intervals of several attendees in order of start time, using a k-way merge over
+ * their already sorted lists. Producing all n intervals of k attendees costs O(n log k).
+ *
+ * <p>Usage: call {@link #next()} until it returns false, reading {@link #start()} and
+ * {@link #end()} after each successful call. The intervals of different attendees may overlap.
+ */
+final class BusyIntervalMerger {
+  // One flattened interval list per attendee with at least one busy interval.
+  private final int[][] lists;
+  // Position of the next unread interval start in each list.
+  private final int[] positions;
+  // Binary min-heap of list indices, ordered by the start of each list's next interval.
+  private final int[] heap;
+  private int heapSize;
+
+  private int start;
+  private int end;
+
+  BusyIntervalMerger(EventIndex index, Collection<String> attendees) {
+    lists = new int[attendees.size()][];
+    int count = 0;
+    for (String attendee : attendees) {
+      int[] busy = index.getBusyIntervals(attendee);
+      if (busy.length > 0) {
+        lists[count++] = busy;
+      }
+    }
+
+    positions = new int[count];
+    heap = new int[count];
+    for (int i = 0; i < count; i++) {
+      heap[heapSize++] = i;
+      siftUp(heapSize - 1);
+    }
+  }
+
+  /**
+   * Advances to the next busy interval.
+   *
+   * @return false once every interval has been read
+   */
+  boolean next() {
+    if (heapSize == 0) {
+      return false;
+    }
+
+    int list = heap[0];
+    start = lists[list][positions[list]];
+    end = lists[list][positions[list] + 1];
+    positions[list] += 2;
+
+    if (positions[list] == lists[list].length) {
+      heap[0] = heap[--heapSize];
+    }
+    siftDown(0);
+    return true;
+  }
+
+  int start() {
+    return start;
+  }
+
+  int end() {
+    return end;
+  }
+
+  private int key(int heapIndex) {
+    int list = heap[heapIndex];
+    return lists[list][positions[list]];
+  }
+
+  private void siftUp(int i) {
+    while (i > 0) {
+      int parent = (i - 1) / 2;
+      if (key(parent) <= key(i)) {
+        return;
+      }
+      swap(i, parent);
+      i = parent;
+    }
+  }
+
+  private void siftDown(int i) {
+    while (true) {
+      int smallest = i;
+      int left = 2 * i + 1;
+      int right = left + 1;
+      if (left < heapSize && key(left) < key(smallest)) {
+        smallest = left;
+      }
+      if (right < heapSize && key(right) < key(smallest)) {
+        smallest = right;
+      }
+      if (smallest == i) {
+        return;
+      }
+      swap(i, smallest);
+      i = smallest;
+    }
+  }
+
+  private void swap(int a, int b) {
+    int tmp = heap[a];
+    heap[a] = heap[b];
+    heap[b] = tmp;
+  }
+}
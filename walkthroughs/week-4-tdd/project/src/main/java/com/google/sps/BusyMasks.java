@@ -0,0 +1,108 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Every attendee's busy minutes as a bitmask: bit {@code m} is set when the attendee is busy in
+ * minute {@code m} of the day. A whole day fits in {@link #WORDS} longs. Instances are immutable
+ * and can be shared between threads.
+ */
+public final class BusyMasks {
+  static final int MINUTES = TimeRange.WHOLE_DAY.duration();
+  static final int WORDS = (MINUTES + Long.SIZE - 1) / Long.SIZE;
+
+  private final EventIndex index;
+  private final ShardedMap<long[]> maskByAttendee;
+
+  private BusyMasks(EventIndex index, ShardedMap<long[]> maskByAttendee) {
+    this.index = index;
+    this.maskByAttendee = maskByAttendee;
+  }
+
+  public static BusyMasks of(Collection<Event> events) {
+    return of(EventIndex.of(events));
+  }
+
+  public static BusyMasks of(EventIndex index) {
+    Map<String, long[]> maskByAttendee = new HashMap<>();
+    for (String attendee : index.getAttendees()) {
+      maskByAttendee.put(attendee, mask(index.getBusyIntervals(attendee)));
+    }
+    return new BusyMasks(index, ShardedMap.of(maskByAttendee));
+  }
+
+  /**
+   * Returns the masks for {@code index}, an updated copy of this instance's index in which only
+   * the intervals of {@code changed} attendees differ. The other masks are shared, and only the
+   * shards holding the changed attendees are copied.
+   */
+  BusyMasks withIndex(EventIndex index, Collection<String> changed) {
+    Map<String, long[]> updates = new HashMap<>();
+    for (String attendee : changed) {
+      int[] busy = index.getBusyIntervals(attendee);
+      updates.put(attendee, busy.length == 0 ? null : mask(busy));
+    }
+    return new BusyMasks(index, maskByAttendee.with(updates));
+  }
+
+  /**
+   * Returns the index the masks were built from.
+   */
+  EventIndex getIndex() {
+    return index;
+  }
+
+  /**
+   * Returns the busy mask of {@code attendee}, or null if they have no events. The array is
+   * shared and must not be modified.
+   */
+  long[] getMask(String attendee) {
+    return maskByAttendee.get(attendee);
+  }
+
+  private static long[] mask(int[] busy) {
+    long[] mask = new long[WORDS];
+    for (int i = 0; i < busy.length; i += 2) {
+      setRange(mask, Math.max(busy[i], 0), Math.min(busy[i + 1], MINUTES));
+    }
+    return mask;
+  }
+
+  /**
+   * Sets the bits {@code from} (inclusive) to {@code to} (exclusive).
+   */
+  static void setRange(long[] mask, int from, int to) {
+    if (from >= to) {
+      return;
+    }
+    int firstWord = from >>> 6;
+    int lastWord = (to - 1) >>> 6;
+    long firstMask = -1L << from;
+    long lastMask = -1L >>> -to;
+    if (firstWord == lastWord) {
+      mask[firstWord] |= firstMask & lastMask;
+      return;
+    }
+    mask[firstWord] |= firstMask;
+    for (int word = firstWord + 1; word < lastWord; word++) {
+      mask[word] = -1L;
+    }
+    mask[lastWord] |= lastMask;
+  }
+}
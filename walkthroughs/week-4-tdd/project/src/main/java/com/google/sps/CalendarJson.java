@@ -0,0 +1,243 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The JSON forms of the calendar types, read and written by hand so that no reflection happens
+ * per request:
+ *
+ * <ul>
+ *   <li>{@link TimeRange}: {@code {"start": 480, "duration": 30}}
+ *   <li>{@link Event}: {@code {"title": "...", "when": {...}, "attendees": ["..."]}}
+ *   <li>{@link MeetingRequest}:
+ *       {@code {"attendees": ["..."], "optionalAttendees": ["..."], "duration": 30}}
+ * </ul>
+ *
+ * Unknown fields are skipped. Events and requests are built through their constructors, so
+ * invalid ones are rejected with a {@link JsonParseException}.
+ */
+public final class CalendarJson {
+  /**
+   * A shared, thread-safe {@link Gson} that uses the adapters below.
+   */
+  public static final Gson GSON = new GsonBuilder()
+      .registerTypeAdapter(TimeRange.class, new TimeRangeAdapter().nullSafe())
+      .registerTypeAdapter(Event.class, new EventAdapter().nullSafe())
+      .registerTypeAdapter(MeetingRequest.class, new MeetingRequestAdapter().nullSafe())
+      .create();
+
+  public static final Type TIME_RANGES = new TypeToken<Collection<TimeRange>>() {}.getType();
+  public static final Type EVENTS = new TypeToken<Collection<Event>>() {}.getType();
+
+  // Disallow instances.
+  private CalendarJson() {}
+
+  private static final class TimeRangeAdapter extends TypeAdapter<TimeRange> {
+    @Override
+    public void write(JsonWriter out, TimeRange range) throws IOException {
+      out.beginObject();
+      out.name("start").value(range.start());
+      out.name("duration").value(range.duration());
+      out.endObject();
+    }
+
+    @Override
+    public TimeRange read(JsonReader in) throws IOException {
+      Integer start = null;
+      Integer duration = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "start":
+            start = readInt(in);
+            break;
+          case "duration":
+            duration = readInt(in);
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+
+      if (start == null || duration == null) {
+        throw new JsonParseException("A time range needs a start and a duration");
+      }
+      return TimeRange.fromStartDuration(start, duration);
+    }
+  }
+
+  private static final class EventAdapter extends TypeAdapter<Event> {
+    private final TimeRangeAdapter timeRangeAdapter = new TimeRangeAdapter();
+
+    @Override
+    public void write(JsonWriter out, Event event) throws IOException {
+      out.beginObject();
+      out.name("title").value(event.getTitle());
+      out.name("when");
+      timeRangeAdapter.write(out, event.getWhen());
+      out.name("attendees");
+      writeStrings(out, event.getAttendees());
+      out.endObject();
+    }
+
+    @Override
+    public Event read(JsonReader in) throws IOException {
+      String title = null;
+      TimeRange when = null;
+      List<String> attendees = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "title":
+            title = readString(in);
+            break;
+          case "when":
+            when = timeRangeAdapter.nullSafe().read(in);
+            break;
+          case "attendees":
+            attendees = readStrings(in);
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+
+      try {
+        return new Event(title, when, attendees);
+      } catch (IllegalArgumentException e) {
+        throw new JsonParseException(e.getMessage(), e);
+      }
+    }
+  }
+
+  private static final class MeetingRequestAdapter extends TypeAdapter<MeetingRequest> {
+    @Override
+    public void write(JsonWriter out, MeetingRequest request) throws IOException {
+      out.beginObject();
+      out.name("attendees");
+      writeStrings(out, request.getAttendees());
+      out.name("optionalAttendees");
+      writeStrings(out, request.getOptionalAttendees());
+      out.name("duration").value(request.getDuration());
+      out.endObject();
+    }
+
+    @Override
+    public MeetingRequest read(JsonReader in) throws IOException {
+      List<String> attendees = null;
+      List<String> optionalAttendees = null;
+      Long duration = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "attendees":
+            attendees = readStrings(in);
+            break;
+          case "optionalAttendees":
+            optionalAttendees = readStrings(in);
+            break;
+          case "duration":
+            // The web form sends the duration as a string; readLong reads both.
+            duration = readLong(in);
+            break;
+          default:
+            in.skipValue();
+        }
+      }
+      in.endObject();
+
+      if (attendees == null || duration == null) {
+        throw new JsonParseException("A meeting request needs attendees and a duration");
+      }
+      return new MeetingRequest(attendees,
+          optionalAttendees == null ? Collections.emptySet() : optionalAttendees, duration);
+    }
+  }
+
+  private static void writeStrings(JsonWriter out, Collection<String> strings)
+      throws IOException {
+    out.beginArray();
+    for (String string : strings) {
+      out.value(string);
+    }
+    out.endArray();
+  }
+
+  /**
+   * Reads an array of strings, or null.
+   */
+  private static List<String> readStrings(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    List<String> strings = new ArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      strings.add(in.nextString());
+    }
+    in.endArray();
+    return strings;
+  }
+
+  /**
+   * Reads an int, rejecting values such as "abc" or 1.5 with a {@link JsonSyntaxException}
+   * rather than the {@link NumberFormatException} that {@link JsonReader#nextInt} throws.
+   */
+  private static int readInt(JsonReader in) throws IOException {
+    try {
+      return in.nextInt();
+    } catch (NumberFormatException e) {
+      throw new JsonSyntaxException("Expected an int at " + in.getPath(), e);
+    }
+  }
+
+  /**
+   * Reads a long, rejecting values that aren't one as {@link #readInt} does.
+   */
+  private static long readLong(JsonReader in) throws IOException {
+    try {
+      return in.nextLong();
+    } catch (NumberFormatException e) {
+      throw new JsonSyntaxException("Expected a long at " + in.getPath(), e);
+    }
+  }
+
+  private static String readString(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return in.nextString();
+  }
+}
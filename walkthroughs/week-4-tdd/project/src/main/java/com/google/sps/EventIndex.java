@@ -0,0 +1,107 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A precomputed view of a set of events that makes meeting queries cheap. For every attendee it
+ * holds the times they are busy as a sorted list of disjoint intervals, so a query only has to
+ * look at the calendars of the people it asks about. Instances are immutable and can be shared
+ * between threads.
+ */
+public final class EventIndex {
+  private static final int[] NOT_BUSY = new int[0];
+
+  // Busy intervals per attendee, flattened as [start0, end0, start1, end1, ...]. Intervals are
+  // sorted and neither overlap nor touch, since touching intervals are merged.
+  private final ShardedMap<int[]> busyByAttendee;
+
+  private EventIndex(ShardedMap<int[]> busyByAttendee) {
+    this.busyByAttendee = busyByAttendee;
+  }
+
+  /**
+   * Builds the index for {@code events}. Events without a duration don't make anyone busy.
+   */
+  public static EventIndex of(Collection<Event> events) {
+    Map<String, List<TimeRange>> rangesByAttendee = new HashMap<>();
+    for (Event event : events) {
+      for (String attendee : event.getAttendees()) {
+        rangesByAttendee.computeIfAbsent(attendee, key -> new ArrayList<>()).add(event.getWhen());
+      }
+    }
+
+    Map<String, int[]> busyByAttendee = new HashMap<>();
+    for (Map.Entry<String, List<TimeRange>> entry : rangesByAttendee.entrySet()) {
+      int[] busy = busyIntervals(entry.getValue());
+      if (busy.length > 0) {
+        busyByAttendee.put(entry.getKey(), busy);
+      }
+    }
+    return new EventIndex(ShardedMap.of(busyByAttendee));
+  }
+
+  /**
+   * Returns the people who have at least one event in this index.
+   */
+  public Collection<String> getAttendees() {
+    return Collections.unmodifiableSet(busyByAttendee.keySet());
+  }
+
+  /**
+   * Returns the busy intervals of {@code attendee} in the flattened form described above. The
+   * array is shared and must not be modified. Indexes made by {@link #withBusyIntervals} return
+   * the very same array unless the attendee's intervals were replaced.
+   */
+  int[] getBusyIntervals(String attendee) {
+    int[] busy = busyByAttendee.get(attendee);
+    return busy == null ? NOT_BUSY : busy;
+  }
+
+  /**
+   * Returns the times {@code attendee} is busy, sharing this index's intervals.
+   */
+  public TimeRangeSet getBusyTimes(String attendee) {
+    int[] busy = getBusyIntervals(attendee);
+    return busy.length == 0 ? TimeRangeSet.EMPTY : TimeRangeSet.wrap(busy);
+  }
+
+  /**
+   * Returns a copy of this index in which the busy intervals of each attendee in {@code changes}
+   * are replaced by the given ones, as made by {@link #busyIntervals}. The intervals of everyone
+   * else are shared with this index, and only the shards of {@link ShardedMap} holding the
+   * changed attendees are copied.
+   */
+  EventIndex withBusyIntervals(Map<String, int[]> changes) {
+    Map<String, int[]> updates = new HashMap<>();
+    for (Map.Entry<String, int[]> change : changes.entrySet()) {
+      updates.put(change.getKey(), change.getValue().length == 0 ? null : change.getValue());
+    }
+    return new EventIndex(busyByAttendee.with(updates));
+  }
+
+  /**
+   * Sorts the ranges and merges those that overlap or touch, dropping ranges without a duration.
+   */
+  static int[] busyIntervals(Collection<TimeRange> ranges) {
+    return TimeRangeSet.of(ranges).bounds();
+  }
+}
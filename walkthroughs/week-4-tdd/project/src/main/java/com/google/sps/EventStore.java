@@ -0,0 +1,419 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import com.google.gson.JsonParseException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The events that meeting queries run against, which can be added, changed and removed while
+ * queries are running.
+ *
+ * <p>Every change rebuilds the busy intervals and masks of only the attendees of the old and new
+ * versions of the event, and publishes a new {@link BusyMasks} (which holds its
+ * {@link EventIndex}) that shares everything else with the previous one. Readers take that
+ * snapshot from a volatile field without locking and never see a change half applied; writers
+ * are serialized.
+ *
+ * <p>If the {@code events.journal} system property names a file, every change is appended to it
+ * as a line of JSON and the events are restored from it on start. A journal that has grown to
+ * more than twice as many lines as there are events is rewritten on start with one line per
+ * event. Otherwise the store lives in memory. The iCalendar files listed, separated by commas, in
+ * the {@code events.ics} system property are imported into a store without a journal, or with a
+ * journal that holds no events yet; without such files an in-memory store starts from
+ * {@link Events#events}.
+ */
+public final class EventStore {
+  // Events added per change while importing, so the import holds a few chunks at a time.
+  private static final int IMPORT_CHUNK_EVENTS = 1000;
+
+  // A journal with more lines than this per event is compacted when it is opened.
+  private static final int MAX_JOURNAL_LINES_PER_EVENT = 2;
+
+  private static volatile EventStore instance;
+
+  // Only modified under the store's lock, but read by anyone.
+  private final Map<Long, Event> events = new ConcurrentHashMap<>();
+  // Only used under the store's lock.
+  private final Map<String, Set<Long>> eventIdsByAttendee = new HashMap<>();
+  private final Writer journal;
+  private long nextId;
+  // Journal lines and imported calendar events that couldn't be read.
+  private final AtomicLong skipped = new AtomicLong();
+
+  private volatile BusyMasks masks;
+  // Odd while a change is being applied, and even otherwise.
+  private volatile long version;
+
+  private EventStore(Map<Long, Event> events, long nextId, Writer journal) {
+    this.nextId = nextId;
+    this.journal = journal;
+    for (Map.Entry<Long, Event> entry : events.entrySet()) {
+      this.events.put(entry.getKey(), entry.getValue());
+      for (String attendee : entry.getValue().getAttendees()) {
+        eventIdsByAttendee.computeIfAbsent(attendee, key -> new HashSet<>()).add(entry.getKey());
+      }
+    }
+    masks = BusyMasks.of(EventIndex.of(this.events.values()));
+  }
+
+  public static EventStore getInstance() {
+    EventStore store = instance;
+    if (store != null) {
+      return store;
+    }
+    synchronized (EventStore.class) {
+      if (instance == null) {
+        instance = load();
+      }
+      return instance;
+    }
+  }
+
+  private static EventStore load() {
+    String journal = System.getProperty("events.journal");
+    String ics = System.getProperty("events.ics");
+    try {
+      EventStore store;
+      if (journal != null) {
+        store = open(Paths.get(journal));
+      } else {
+        store = inMemory(ics != null ? Collections.emptyList() : Arrays.asList(Events.events));
+      }
+      // A journal that has events already holds those of an earlier import.
+      if (ics != null && store.events.isEmpty()) {
+        List<Path> paths = new ArrayList<>();
+        for (String path : ics.split(",")) {
+          paths.add(Paths.get(path.trim()));
+        }
+        store.importIcs(paths);
+      }
+      return store;
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          "Failed to load events from " + (journal != null ? journal : ics), e);
+    }
+  }
+
+  /**
+   * Creates a store holding {@code events} that isn't persisted.
+   */
+  public static EventStore inMemory(Collection<Event> events) {
+    Map<Long, Event> eventsById = new HashMap<>();
+    for (Event event : events) {
+      eventsById.put((long) eventsById.size() + 1, event);
+    }
+    return new EventStore(eventsById, eventsById.size() + 1, null);
+  }
+
+  /**
+   * Creates a store persisted to {@code path}, restoring the events recorded there. Lines that
+   * can't be read, such as one cut short by a crash, are skipped. Ids of deleted events are not
+   * handed out again. A journal mostly made of superseded lines is compacted first.
+   */
+  public static EventStore open(Path path) throws IOException {
+    Map<Long, Event> eventsById = new HashMap<>();
+    long nextId = 1;
+    long lines = 0;
+    long unreadable = 0;
+    if (Files.exists(path)) {
+      try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.trim().isEmpty()) {
+            continue;
+          }
+          lines++;
+          try {
+            JournalEntry entry = CalendarJson.GSON.fromJson(line, JournalEntry.class);
+            if (entry == null) {
+              throw new IllegalArgumentException("Expected a journal entry");
+            }
+            nextId = Math.max(nextId, entry.id + 1);
+            if (entry.event == null) {
+              eventsById.remove(entry.id);
+            } else {
+              eventsById.put(entry.id, entry.event);
+            }
+          } catch (JsonParseException | IllegalArgumentException e) {
+            unreadable++;
+          }
+        }
+      }
+    }
+    if (lines > MAX_JOURNAL_LINES_PER_EVENT * Math.max(1, eventsById.size())) {
+      compact(path, eventsById, nextId);
+    }
+    Writer journal = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    EventStore store = new EventStore(eventsById, nextId, journal);
+    store.skipped.set(unreadable);
+    return store;
+  }
+
+  /**
+   * Replaces the journal at {@code path} with one line per event, written next to it and then
+   * moved over it atomically, so a crash leaves either the old journal or the new one.
+   */
+  private static void compact(Path path, Map<Long, Event> eventsById, long nextId)
+      throws IOException {
+    Path directory = path.toAbsolutePath().getParent();
+    Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+    try {
+      try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+        List<Long> ids = new ArrayList<>(eventsById.keySet());
+        Collections.sort(ids);
+        for (long id : ids) {
+          writer.write(CalendarJson.GSON.toJson(new JournalEntry(id, eventsById.get(id))));
+          writer.write('\n');
+        }
+        if (!eventsById.containsKey(nextId - 1) && nextId > 1) {
+          // Keeps the id of the last deleted event from being handed out again.
+          writer.write(CalendarJson.GSON.toJson(new JournalEntry(nextId - 1, null)));
+          writer.write('\n');
+        }
+      }
+      Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Adds {@code event} and returns its new id.
+   */
+  public synchronized long add(Event event) throws IOException {
+    long id = nextId++;
+    write(id, event);
+    apply(id, event);
+    return id;
+  }
+
+  /**
+   * Adds all of {@code events} as one change, so the index is rebuilt once rather than per event.
+   * The events get consecutive ids in iteration order.
+   *
+   * @return the id of the first event
+   */
+  public synchronized long addAll(Collection<Event> events) throws IOException {
+    long firstId = nextId;
+    for (Event event : events) {
+      append(nextId++, event);
+    }
+    flush();
+
+    version++;
+    Set<String> changed = new HashSet<>();
+    long id = firstId;
+    for (Event event : events) {
+      this.events.put(id, event);
+      for (String attendee : event.getAttendees()) {
+        changed.add(attendee);
+        eventIdsByAttendee.computeIfAbsent(attendee, key -> new HashSet<>()).add(id);
+      }
+      id++;
+    }
+    publish(changed);
+    version++;
+    return firstId;
+  }
+
+  /**
+   * Adds the events of the iCalendar files in {@code paths}, which are read in parallel and added
+   * through {@link #addAll} in chunks as they are parsed, so the events are never all held
+   * outside the store at once. Each chunk is a change of its own.
+   *
+   * @return the number of events that couldn't be read and were left out
+   */
+  public long importIcs(Collection<Path> paths) throws IOException {
+    IcsImporter importer = new IcsImporter();
+    importer.readAll(paths, IMPORT_CHUNK_EVENTS, this::addAll);
+    skipped.addAndGet(importer.getSkipped());
+    return importer.getSkipped();
+  }
+
+  /**
+   * Replaces the event with {@code id}.
+   *
+   * @return false if there is no such event
+   */
+  public synchronized boolean update(long id, Event event) throws IOException {
+    if (!events.containsKey(id)) {
+      return false;
+    }
+    write(id, event);
+    apply(id, event);
+    return true;
+  }
+
+  /**
+   * Removes the event with {@code id}.
+   *
+   * @return false if there is no such event
+   */
+  public synchronized boolean delete(long id) throws IOException {
+    if (!events.containsKey(id)) {
+      return false;
+    }
+    write(id, null);
+    apply(id, null);
+    return true;
+  }
+
+  /**
+   * Returns the number of journal lines skipped when the store was opened, such as one cut short
+   * by a crash, plus the calendar events left out of imports because they couldn't be read.
+   */
+  public long getSkipped() {
+    return skipped.get();
+  }
+
+  /**
+   * Returns a number that changes whenever the events do. It is odd while a change is being
+   * applied. A caller that reads the same even number before and after reading the events has
+   * seen a consistent set of them.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Returns the event with {@code id}, or null if there is none.
+   */
+  public Event get(long id) {
+    return events.get(id);
+  }
+
+  /**
+   * Returns a read-only live view of all events by id.
+   */
+  public Map<Long, Event> getEvents() {
+    return Collections.unmodifiableMap(events);
+  }
+
+  /**
+   * Returns the index of all events as of the latest change. It never changes after being
+   * returned, so a caller that needs several queries to agree should hold on to it.
+   */
+  public EventIndex getIndex() {
+    return masks.getIndex();
+  }
+
+  /**
+   * Returns the busy masks of all events as of the latest change, together with their index.
+   */
+  public BusyMasks getMasks() {
+    return masks;
+  }
+
+  /**
+   * Stores {@code event} under {@code id}, or removes it if {@code event} is null, and publishes
+   * an index with the intervals of the affected attendees rebuilt.
+   */
+  private void apply(long id, Event event) {
+    version++;
+    Event old = event == null ? events.remove(id) : events.put(id, event);
+
+    Set<String> changed = new HashSet<>();
+    if (old != null) {
+      for (String attendee : old.getAttendees()) {
+        changed.add(attendee);
+        eventIdsByAttendee.get(attendee).remove(id);
+      }
+    }
+    if (event != null) {
+      for (String attendee : event.getAttendees()) {
+        changed.add(attendee);
+        eventIdsByAttendee.computeIfAbsent(attendee, key -> new HashSet<>()).add(id);
+      }
+    }
+
+    publish(changed);
+    version++;
+  }
+
+  /**
+   * Publishes an index with the intervals of the {@code changed} attendees rebuilt from the
+   * events they are in.
+   */
+  private void publish(Set<String> changed) {
+    Map<String, int[]> busyByAttendee = new HashMap<>();
+    for (String attendee : changed) {
+      Set<Long> ids = eventIdsByAttendee.get(attendee);
+      List<TimeRange> ranges = new ArrayList<>(ids.size());
+      for (long eventId : ids) {
+        ranges.add(events.get(eventId).getWhen());
+      }
+      if (ids.isEmpty()) {
+        eventIdsByAttendee.remove(attendee);
+      }
+      busyByAttendee.put(attendee, EventIndex.busyIntervals(ranges));
+    }
+
+    BusyMasks current = masks;
+    masks = current.withIndex(current.getIndex().withBusyIntervals(busyByAttendee), changed);
+  }
+
+  private void write(long id, Event event) throws IOException {
+    append(id, event);
+    flush();
+  }
+
+  private void append(long id, Event event) throws IOException {
+    if (journal != null) {
+      journal.write(CalendarJson.GSON.toJson(new JournalEntry(id, event)));
+      journal.write('\n');
+    }
+  }
+
+  private void flush() throws IOException {
+    if (journal != null) {
+      journal.flush();
+    }
+  }
+
+  /**
+   * One line of the journal. A missing event means the event with {@code id} was deleted.
+   */
+  private static final class JournalEntry {
+    long id;
+    Event event;
+
+    JournalEntry(long id, Event event) {
+      this.id = id;
+      this.event = event;
+    }
+  }
+}
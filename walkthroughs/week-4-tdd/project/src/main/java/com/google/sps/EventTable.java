@@ -0,0 +1,202 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, column-oriented copy of a set of events. Attendee names are replaced by int ids, and
+ * each event is a row in primitive columns: start, end and, in compressed sparse row (CSR) form,
+ * its attendees. A second CSR table lists each attendee's rows in order of start, so a query
+ * reads only the people it asks about, from contiguous arrays. Compared with {@link Event}
+ * objects, which each carry a {@link TimeRange} and a {@code HashSet} of names, this takes a
+ * fraction of the memory. Instances are immutable and can be shared between threads.
+ */
+public final class EventTable {
+  // Attendee id to name, and back.
+  private final String[] names;
+  private final Map<String, Integer> ids;
+
+  // One entry per row. Rows are sorted by start.
+  private final String[] titles;
+  private final int[] starts;
+  private final int[] ends;
+
+  // The attendees of row r are attendees[attendeeOffsets[r]] to attendees[attendeeOffsets[r + 1]].
+  private final int[] attendeeOffsets;
+  private final int[] attendees;
+
+  // The rows of attendee a are rows[rowOffsets[a]] to rows[rowOffsets[a + 1]], in ascending order.
+  private final int[] rowOffsets;
+  private final int[] rows;
+
+  private EventTable(String[] names, Map<String, Integer> ids, String[] titles, int[] starts,
+      int[] ends, int[] attendeeOffsets, int[] attendees, int[] rowOffsets, int[] rows) {
+    this.names = names;
+    this.ids = ids;
+    this.titles = titles;
+    this.starts = starts;
+    this.ends = ends;
+    this.attendeeOffsets = attendeeOffsets;
+    this.attendees = attendees;
+    this.rowOffsets = rowOffsets;
+    this.rows = rows;
+  }
+
+  public static EventTable of(Collection<Event> events) {
+    // Sort by start without boxing: the start goes in the high bits and the position in the low.
+    Event[] byPosition = events.toArray(new Event[0]);
+    long[] order = new long[byPosition.length];
+    for (int i = 0; i < byPosition.length; i++) {
+      order[i] = ((long) byPosition[i].getWhen().start() << 32) | i;
+    }
+    Arrays.sort(order);
+
+    Map<String, Integer> ids = new HashMap<>();
+    List<String> names = new ArrayList<>();
+    String[] titles = new String[order.length];
+    int[] starts = new int[order.length];
+    int[] ends = new int[order.length];
+    int[] attendeeOffsets = new int[order.length + 1];
+    int postings = 0;
+    for (Event event : byPosition) {
+      postings += event.getAttendees().size();
+    }
+    int[] attendees = new int[postings];
+
+    int posting = 0;
+    for (int row = 0; row < order.length; row++) {
+      Event event = byPosition[(int) order[row]];
+      titles[row] = event.getTitle();
+      starts[row] = event.getWhen().start();
+      ends[row] = event.getWhen().end();
+      attendeeOffsets[row] = posting;
+      for (String name : event.getAttendees()) {
+        Integer id = ids.get(name);
+        if (id == null) {
+          id = names.size();
+          ids.put(name, id);
+          names.add(name);
+        }
+        attendees[posting++] = id;
+      }
+    }
+    attendeeOffsets[order.length] = posting;
+
+    // Invert the postings with a counting pass, so each attendee's rows stay in row order.
+    int[] rowOffsets = new int[names.size() + 1];
+    for (int attendee : attendees) {
+      rowOffsets[attendee + 1]++;
+    }
+    for (int attendee = 0; attendee < names.size(); attendee++) {
+      rowOffsets[attendee + 1] += rowOffsets[attendee];
+    }
+    int[] next = Arrays.copyOf(rowOffsets, names.size());
+    int[] rows = new int[postings];
+    for (int row = 0; row < order.length; row++) {
+      for (int i = attendeeOffsets[row]; i < attendeeOffsets[row + 1]; i++) {
+        rows[next[attendees[i]]++] = row;
+      }
+    }
+
+    return new EventTable(names.toArray(new String[0]), ids, titles, starts, ends,
+        attendeeOffsets, attendees, rowOffsets, rows);
+  }
+
+  /**
+   * Returns the number of events in the table.
+   */
+  public int size() {
+    return starts.length;
+  }
+
+  /**
+   * Rebuilds the event in {@code row}.
+   */
+  public Event getEvent(int row) {
+    List<String> eventAttendees = new ArrayList<>();
+    for (int i = attendeeOffsets[row]; i < attendeeOffsets[row + 1]; i++) {
+      eventAttendees.add(names[attendees[i]]);
+    }
+    return new Event(titles[row], TimeRange.fromStartEnd(starts[row], ends[row], false),
+        eventAttendees);
+  }
+
+  /**
+   * Returns the id of {@code name}, or -1 if they aren't in any event.
+   */
+  int attendeeId(String name) {
+    Integer id = ids.get(name);
+    return id == null ? -1 : id;
+  }
+
+  int start(int row) {
+    return starts[row];
+  }
+
+  int end(int row) {
+    return ends[row];
+  }
+
+  /**
+   * Returns where the rows of {@code attendee} begin in {@link #row(int)}.
+   */
+  int firstRow(int attendee) {
+    return rowOffsets[attendee];
+  }
+
+  /**
+   * Returns where the rows of {@code attendee} end (exclusive) in {@link #row(int)}.
+   */
+  int endRow(int attendee) {
+    return rowOffsets[attendee + 1];
+  }
+
+  int row(int position) {
+    return rows[position];
+  }
+
+  /**
+   * Returns the busy intervals of {@code name} sorted and merged, in the form
+   * {@link EventIndex} uses.
+   */
+  int[] busyIntervals(String name) {
+    int attendee = attendeeId(name);
+    if (attendee < 0) {
+      return new int[0];
+    }
+    int[] merged = new int[(endRow(attendee) - firstRow(attendee)) * 2];
+    int size = 0;
+    for (int i = firstRow(attendee); i < endRow(attendee); i++) {
+      int start = starts[rows[i]];
+      int end = ends[rows[i]];
+      if (start == end) {
+        continue;
+      }
+      if (size > 0 && start <= merged[size - 1]) {
+        merged[size - 1] = Math.max(merged[size - 1], end);
+      } else {
+        merged[size++] = start;
+        merged[size++] = end;
+      }
+    }
+    return size == merged.length ? merged : Arrays.copyOf(merged, size);
+  }
+}
@@ -14,25 +14,40 @@
 
 package com.google.sps;
 
-import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
-
-public final class FindMeetingQuery {
-
-  Collection<TimeRange> possibleMeetingTime = new ArrayList<>();
-
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Finds the times at which everyone in a {@link MeetingRequest} is free for the requested
+ * duration, narrowed to those that suit the most optional attendees. The class holds no state, so
+ * one instance can serve any number of threads.
+ */
+public final class FindMeetingQuery implements MeetingQueryEngine {
+
+  @Override
   public Collection<TimeRange> query(Collection<Event> events, MeetingRequest request) {
+    return query(EventIndex.of(events), request);
+  }
+
+  /**
+   * Answers the request against a prebuilt index. Only the busy intervals of the requested
+   * attendees are read, so the cost grows with their calendars rather than with all events.
+   */
+  public Collection<TimeRange> query(EventIndex index, MeetingRequest request) {
     // find the list of attendees and required duration
     Collection<String> reqAttendees = request.getAttendees();
-    int reqDuration = (int)request.getDuration();
+    long reqDuration = request.getDuration();
 
     // corner case: no attendees in the request
-    if (reqAttendees.isEmpty()) {
+    if (reqAttendees.isEmpty() && request.getOptionalAttendees().isEmpty()) {
       return Arrays.asList(TimeRange.WHOLE_DAY);
     }
 
@@ -41,54 +56,86 @@ public final class FindMeetingQuery {
       return Arrays.asList();
     }
 
-    // check if each event's attendees clash with the request attendees sorted by starting time
-    List<TimeRange> eventTimes = events.stream()
-                                      .filter(event -> eventContainsRequiredAttendee(event.getAttendees(), reqAttendees))
-                                      .map(event -> event.getWhen())
-                                      .sorted(TimeRange.ORDER_BY_START)
-                                      .collect(Collectors.toList());
-
-    // no event affecting required attendees
-    if (eventTimes.isEmpty()) {
-      return Arrays.asList(TimeRange.WHOLE_DAY);
+    // corner case: only optional attendees, so the whole day works for everyone mandatory
+    if (reqAttendees.isEmpty()) {
+      return OptionalAttendeeCoverage.query(index, request, Arrays.asList(TimeRange.WHOLE_DAY));
     }
 
-    int possibleStartTime = TimeRange.START_OF_DAY;
-
-    // consider the time window between the start of the day and the first event.
-    int eventStartTime = eventTimes.get(0).start();
-    addPossibleTime(possibleStartTime, eventStartTime, reqDuration);
-    // sets the end time of first event to the start time of the possible slot
-    possibleStartTime = eventTimes.get(0).end();
-
-    for (int i = 1; i < eventTimes.size(); i++) {
-      int nextEventStart = eventTimes.get(i).start();
-      int prevEventEnd = eventTimes.get(i-1).end();
-      int currEventEnd = eventTimes.get(i).end();
+    List<TimeRange> possibleMeetingTimes = new ArrayList<>();
+    new SlotIterator(index, request).forEachRemaining(possibleMeetingTimes::add);
+    return OptionalAttendeeCoverage.query(index, request, possibleMeetingTimes);
+  }
 
-      addPossibleTime(possibleStartTime, nextEventStart, reqDuration);
-      // ensures that the next free time is the based on the latest event ending time
-      possibleStartTime = Math.max(prevEventEnd, currEventEnd);
+  /**
+   * Returns the same times as {@link #query(EventIndex, MeetingRequest)}, found one at a time as
+   * the iterator is advanced. Stopping early skips the rest of the sweep, so asking for the first
+   * slot only reads the busy intervals up to it. Requests with optional attendees need the whole
+   * day to pick the best group, so they are answered up front.
+   */
+  public Iterator<TimeRange> slots(EventIndex index, MeetingRequest request) {
+    if (request.getAttendees().isEmpty()
+        || !request.getOptionalAttendees().isEmpty()
+        || request.getDuration() > TimeRange.WHOLE_DAY.duration()) {
+      return query(index, request).iterator();
     }
-
-    // include of the time from last event to the end of the day
-    addPossibleTime(possibleStartTime, TimeRange.END_OF_DAY + 1, reqDuration);
-    return possibleMeetingTime;
+    return new SlotIterator(index, request);
   }
 
   /**
-    * Adds a possible meeting time to the query
-    */
-  private void addPossibleTime(int start, int end, long reqDuration) {
-    if (end - start >= reqDuration) {
-      possibleMeetingTime.add(TimeRange.fromStartEnd(start, end, false));
-    }
+   * Returns {@link #slots} as an ordered stream, e.g. to take the first few with
+   * {@code limit}.
+   */
+  public Stream<TimeRange> stream(EventIndex index, MeetingRequest request) {
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(slots(index, request),
+        Spliterator.ORDERED | Spliterator.NONNULL), false);
   }
 
   /**
-   * Checks whether an event contains a required attendee.
+   * Sweeps the attendees' busy intervals in start order, stopping at each gap between the end of
+   * what has been seen so far and the next start that is long enough to meet in.
    */
-  private Boolean eventContainsRequiredAttendee(Set<String> eventAttendees, Collection<String> reqAttendees) {
-    return !Collections.disjoint(eventAttendees, reqAttendees);
+  private static final class SlotIterator implements Iterator<TimeRange> {
+    private final BusyIntervalMerger busy;
+    private final long reqDuration;
+    private int possibleStartTime = TimeRange.START_OF_DAY;
+    private boolean done;
+    private TimeRange next;
+
+    SlotIterator(EventIndex index, MeetingRequest request) {
+      busy = new BusyIntervalMerger(index, request.getAttendees());
+      reqDuration = request.getDuration();
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && !done) {
+        if (busy.next()) {
+          next = possibleTime(possibleStartTime, busy.start());
+          possibleStartTime = Math.max(possibleStartTime, busy.end());
+        } else {
+          // include of the time from last event to the end of the day
+          next = possibleTime(possibleStartTime, TimeRange.END_OF_DAY + 1);
+          done = true;
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public TimeRange next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      TimeRange slot = next;
+      next = null;
+      return slot;
+    }
+
+    /**
+     * Returns the range from {@code start} to {@code end} if it is long enough, or null.
+     */
+    private TimeRange possibleTime(int start, int end) {
+      return end - start >= reqDuration ? TimeRange.fromStartEnd(start, end, false) : null;
+    }
   }
 }
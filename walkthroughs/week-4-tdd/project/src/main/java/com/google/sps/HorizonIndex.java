@@ -0,0 +1,112 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Every attendee's events over any number of days, kept in one {@link IntervalTree} per attendee
+ * so a query only reads the events of the people it asks about that fall in its window.
+ * Instances are immutable and can be shared between threads; use {@link #builder()} to make one.
+ */
+public final class HorizonIndex {
+  private final Map<String, IntervalTree> treeByAttendee;
+
+  private HorizonIndex(Map<String, IntervalTree> treeByAttendee) {
+    this.treeByAttendee = treeByAttendee;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns the people who have at least one event in this index.
+   */
+  public Collection<String> getAttendees() {
+    return Collections.unmodifiableSet(treeByAttendee.keySet());
+  }
+
+  /**
+   * Returns the events of {@code attendee}, or null if they have none.
+   */
+  IntervalTree getTree(String attendee) {
+    return treeByAttendee.get(attendee);
+  }
+
+  /**
+   * Collects events for a {@link HorizonIndex}. Events without a duration don't make anyone
+   * busy and are dropped.
+   */
+  public static final class Builder {
+    private final Map<String, Intervals> intervalsByAttendee = new HashMap<>();
+
+    private Builder() {}
+
+    public Builder add(HorizonRange when, Collection<String> attendees) {
+      if (when.duration() > 0) {
+        for (String attendee : attendees) {
+          intervalsByAttendee.computeIfAbsent(attendee, key -> new Intervals())
+              .add(when.start(), when.end());
+        }
+      }
+      return this;
+    }
+
+    /**
+     * Adds single-day {@code events} as taking place on day {@code epochDay}.
+     */
+    public Builder addDay(long epochDay, Collection<Event> events) {
+      for (Event event : events) {
+        add(HorizonRange.onDay(epochDay, event.getWhen()), event.getAttendees());
+      }
+      return this;
+    }
+
+    public HorizonIndex build() {
+      Map<String, IntervalTree> treeByAttendee = new HashMap<>();
+      for (Map.Entry<String, Intervals> entry : intervalsByAttendee.entrySet()) {
+        Intervals intervals = entry.getValue();
+        treeByAttendee.put(entry.getKey(),
+            new IntervalTree(intervals.starts, intervals.ends, intervals.size));
+      }
+      intervalsByAttendee.clear();
+      return new HorizonIndex(treeByAttendee);
+    }
+  }
+
+  /**
+   * Growable parallel arrays of interval starts and ends.
+   */
+  private static final class Intervals {
+    long[] starts = new long[4];
+    long[] ends = new long[4];
+    int size;
+
+    void add(long start, long end) {
+      if (size == starts.length) {
+        starts = Arrays.copyOf(starts, size * 2);
+        ends = Arrays.copyOf(ends, size * 2);
+      }
+      starts[size] = start;
+      ends[size] = end;
+      size++;
+    }
+  }
+}
@@ -0,0 +1,204 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Finds the times within an arbitrary window, possibly spanning many days, at which all of a
+ * group of people are free. Only the events that overlap the window are read, through each
+ * attendee's {@link IntervalTree}. The class holds no state, so one instance can serve any number
+ * of threads.
+ */
+public final class HorizonMeetingQuery {
+
+  /**
+   * Returns the free ranges within {@code window} that are at least {@code duration} long, in
+   * order of start.
+   */
+  public List<HorizonRange> query(
+      HorizonIndex index, Collection<String> attendees, HorizonRange window, long duration) {
+    List<HorizonRange> possibleMeetingTimes = new ArrayList<>();
+    if (duration > window.duration()) {
+      return possibleMeetingTimes;
+    }
+
+    long[] busy = busyIntervals(index, attendees, window);
+    long possibleStartTime = window.start();
+    for (int i = 0; i < busy.length && busy[i] < window.end(); i += 2) {
+      addPossibleTime(possibleMeetingTimes, possibleStartTime, busy[i], duration);
+      possibleStartTime = Math.max(possibleStartTime, busy[i + 1]);
+    }
+    addPossibleTime(possibleMeetingTimes, possibleStartTime, window.end(), duration);
+    return possibleMeetingTimes;
+  }
+
+  /**
+   * Returns the earliest slot of {@code duration} within {@code window} at which everyone is
+   * free, or null if there is none. The attendees' intervals are merged lazily, in start order,
+   * and the merge stops at the first gap that is long enough.
+   *
+   * @throws IllegalArgumentException if {@code duration} isn't positive
+   */
+  public HorizonRange firstFreeSlot(
+      HorizonIndex index, Collection<String> attendees, HorizonRange window, long duration) {
+    if (duration <= 0) {
+      throw new IllegalArgumentException("duration must be positive: " + duration);
+    }
+    if (duration > window.duration()) {
+      return null;
+    }
+
+    // The run whose next interval starts first is always at the head of the queue.
+    List<long[]> runs = overlappingRuns(index, attendees, window);
+    int[] positions = new int[runs.size()];
+    PriorityQueue<Integer> next = new PriorityQueue<>(Math.max(1, runs.size()),
+        Comparator.comparingLong(run -> runs.get(run)[positions[run]]));
+    for (int run = 0; run < runs.size(); run++) {
+      next.add(run);
+    }
+
+    long freeFrom = window.start();
+    while (!next.isEmpty() && window.end() - freeFrom >= duration) {
+      int run = next.poll();
+      long[] intervals = runs.get(run);
+      if (intervals[positions[run]] - freeFrom >= duration) {
+        break;
+      }
+      freeFrom = Math.max(freeFrom, intervals[positions[run] + 1]);
+      positions[run] += 2;
+      if (positions[run] < intervals.length) {
+        next.add(run);
+      }
+    }
+    return window.end() - freeFrom >= duration
+        ? HorizonRange.fromStartDuration(freeFrom, duration)
+        : null;
+  }
+
+  /**
+   * Returns the union of the attendees' events that overlap {@code window}, flattened as
+   * [start0, end0, start1, end1, ...] with no two intervals overlapping or touching. Each
+   * attendee's intervals come out of their tree in start order, so the runs are merged pairwise,
+   * in O(n log a) for n intervals of a attendees.
+   */
+  private static long[] busyIntervals(
+      HorizonIndex index, Collection<String> attendees, HorizonRange window) {
+    List<long[]> runs = overlappingRuns(index, attendees, window);
+    if (runs.isEmpty()) {
+      return new long[0];
+    }
+
+    while (runs.size() > 1) {
+      List<long[]> merged = new ArrayList<>((runs.size() + 1) / 2);
+      for (int i = 0; i + 1 < runs.size(); i += 2) {
+        long[] a = runs.get(i);
+        long[] b = runs.get(i + 1);
+        merged.add(union(a, a.length, b, b.length));
+      }
+      if (runs.size() % 2 == 1) {
+        merged.add(runs.get(runs.size() - 1));
+      }
+      runs = merged;
+    }
+    long[] only = runs.get(0);
+    // A single run was never merged, so its own overlaps are still there.
+    return union(only, only.length, only, 0);
+  }
+
+  /**
+   * Returns, for each attendee with events that overlap {@code window}, those events in start
+   * order, flattened as [start0, end0, start1, end1, ...].
+   */
+  private static List<long[]> overlappingRuns(
+      HorizonIndex index, Collection<String> attendees, HorizonRange window) {
+    List<long[]> runs = new ArrayList<>(attendees.size());
+    IntervalCollector collector = new IntervalCollector();
+    for (String attendee : attendees) {
+      IntervalTree tree = index.getTree(attendee);
+      if (tree == null) {
+        continue;
+      }
+      collector.size = 0;
+      tree.forEachOverlapping(window.start(), window.end(), collector);
+      if (collector.size > 0) {
+        runs.add(Arrays.copyOf(collector.intervals, collector.size));
+      }
+    }
+    return runs;
+  }
+
+  /**
+   * Merges two start-ordered interval lists into one list of disjoint intervals.
+   */
+  private static long[] union(long[] a, int aLength, long[] b, int bLength) {
+    long[] merged = new long[aLength + bLength];
+    int size = 0;
+    int i = 0;
+    int j = 0;
+    while (i < aLength || j < bLength) {
+      long start;
+      long end;
+      if (j == bLength || (i < aLength && a[i] <= b[j])) {
+        start = a[i];
+        end = a[i + 1];
+        i += 2;
+      } else {
+        start = b[j];
+        end = b[j + 1];
+        j += 2;
+      }
+      if (size > 0 && start <= merged[size - 1]) {
+        merged[size - 1] = Math.max(merged[size - 1], end);
+      } else {
+        merged[size++] = start;
+        merged[size++] = end;
+      }
+    }
+    return size == merged.length ? merged : Arrays.copyOf(merged, size);
+  }
+
+  /**
+   * Adds a possible meeting time to the results if it is long enough.
+   */
+  private static void addPossibleTime(
+      List<HorizonRange> possibleMeetingTimes, long start, long end, long duration) {
+    if (end - start >= duration) {
+      possibleMeetingTimes.add(HorizonRange.fromStartEnd(start, end));
+    }
+  }
+
+  /**
+   * Gathers the intervals reported by a tree into a reusable flat array.
+   */
+  private static final class IntervalCollector implements IntervalTree.Visitor {
+    long[] intervals = new long[16];
+    int size;
+
+    @Override
+    public void visit(long start, long end) {
+      if (size == intervals.length) {
+        intervals = Arrays.copyOf(intervals, size * 2);
+      }
+      intervals[size++] = start;
+      intervals[size++] = end;
+    }
+  }
+}
@@ -0,0 +1,120 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Comparator;
+
+/**
+ * A span of time that isn't limited to one day. Both ends are minutes since the epoch, with the
+ * end excluded. Use it to search calendars over a week, a month or any other window.
+ */
+public final class HorizonRange {
+  public static final long MINUTES_PER_DAY = TimeRange.WHOLE_DAY.duration();
+
+  /**
+   * A comparator for sorting ranges by their start time in ascending order.
+   */
+  public static final Comparator<HorizonRange> ORDER_BY_START =
+      Comparator.comparingLong(HorizonRange::start);
+
+  private final long start;
+  private final long end;
+
+  private HorizonRange(long start, long end) {
+    if (end < start) {
+      throw new IllegalArgumentException("A range can't end before it starts.");
+    }
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Creates a range from {@code start} (inclusive) to {@code end} (exclusive).
+   */
+  public static HorizonRange fromStartEnd(long start, long end) {
+    return new HorizonRange(start, end);
+  }
+
+  public static HorizonRange fromStartDuration(long start, long duration) {
+    return new HorizonRange(start, start + duration);
+  }
+
+  /**
+   * Returns the whole of day {@code epochDay}, counted in days since the epoch.
+   */
+  public static HorizonRange ofDay(long epochDay) {
+    return fromStartDuration(epochDay * MINUTES_PER_DAY, MINUTES_PER_DAY);
+  }
+
+  /**
+   * Places a range within a single day on day {@code epochDay}.
+   */
+  public static HorizonRange onDay(long epochDay, TimeRange range) {
+    return fromStartDuration(epochDay * MINUTES_PER_DAY + range.start(), range.duration());
+  }
+
+  /**
+   * Returns the start of the range in minutes since the epoch.
+   */
+  public long start() {
+    return start;
+  }
+
+  /**
+   * Returns the end of the range. This ending value is the closing exclusive bound.
+   */
+  public long end() {
+    return end;
+  }
+
+  public long duration() {
+    return end - start;
+  }
+
+  /**
+   * Checks if the two ranges share at least one minute.
+   */
+  public boolean overlaps(HorizonRange other) {
+    return start < other.end && other.start < end;
+  }
+
+  /**
+   * Checks if every minute of {@code other} is in this range.
+   */
+  public boolean contains(HorizonRange other) {
+    return start <= other.start && other.end <= end;
+  }
+
+  public boolean contains(long point) {
+    return start <= point && point < end;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof HorizonRange
+        && start == ((HorizonRange) other).start
+        && end == ((HorizonRange) other).end;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(start) * 31 + Long.hashCode(end);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Range: [%d, %d)", start, end);
+  }
+}
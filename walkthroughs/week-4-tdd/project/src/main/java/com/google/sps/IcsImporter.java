@@ -0,0 +1,412 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads the events of iCalendar (RFC 5545) files, such as calendar exports, one line at a time.
+ * Events can either be returned all at once, or handed to an {@link EventSink} in chunks, so that
+ * importing a large export only holds the chunks being read rather than every event.
+ *
+ * <p>Each VEVENT becomes an {@link Event} with its SUMMARY as the title, the time of day of
+ * DTSTART to DTEND (or DTSTART plus DURATION) as when, and the calendar address of each ATTENDEE,
+ * without {@code mailto:}, as the attendees. Since an event is within one day, one that runs past
+ * midnight is cut off there, and a whole-day event (a DATE rather than a DATE-TIME) takes the
+ * whole day. Times are taken as written, whatever their time zone. Events without a DTSTART,
+ * recurrence rules and other components such as VTODO are ignored.
+ *
+ * <p>Attendee addresses are dictionary encoded: every event naming the same attendee shares one
+ * string, however many files and threads the events were read from. Instances are thread-safe.
+ */
+public final class IcsImporter {
+  private static final int MINUTES_PER_DAY = TimeRange.WHOLE_DAY.duration();
+
+  private final Map<String, String> dictionary = new ConcurrentHashMap<>();
+  private final AtomicLong skipped = new AtomicLong();
+
+  /**
+   * Receives the events read, a chunk at a time.
+   */
+  public interface EventSink {
+    void accept(List<Event> events) throws IOException;
+  }
+
+  /**
+   * Reads the events of several files, such as the parts of a split export, in parallel. The
+   * events are returned in the order of the files.
+   */
+  public List<Event> readAll(Collection<Path> paths) throws IOException {
+    List<Event> events = new ArrayList<>();
+    for (List<Event> fileEvents : inParallel(paths, this::read)) {
+      events.addAll(fileEvents);
+    }
+    return events;
+  }
+
+  /**
+   * Reads the events of several files in parallel, handing them to {@code sink} in chunks of at
+   * most {@code chunkSize} events. Chunks of different files may arrive in any order and from
+   * several threads at once.
+   */
+  public void readAll(Collection<Path> paths, int chunkSize, EventSink sink) throws IOException {
+    inParallel(paths, path -> {
+      read(path, chunkSize, sink);
+      return null;
+    });
+  }
+
+  public List<Event> read(Path path) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      return read(reader);
+    }
+  }
+
+  /**
+   * Reads the events of {@code path}, handing them to {@code sink} in chunks of at most
+   * {@code chunkSize} events.
+   */
+  public void read(Path path, int chunkSize, EventSink sink) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      read(reader, chunkSize, sink);
+    }
+  }
+
+  /**
+   * Reads the events from {@code reader}, which is not closed.
+   */
+  public List<Event> read(BufferedReader reader) throws IOException {
+    List<Event> events = new ArrayList<>();
+    read(reader, Integer.MAX_VALUE, events::addAll);
+    return events;
+  }
+
+  /**
+   * Reads the events from {@code reader}, which is not closed, handing them to {@code sink} in
+   * chunks of at most {@code chunkSize} events.
+   */
+  public void read(BufferedReader reader, int chunkSize, EventSink sink) throws IOException {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+    }
+    Parser parser = new Parser();
+    // Long lines are folded onto continuation lines that start with a space or a tab.
+    StringBuilder line = new StringBuilder();
+    String next;
+    while ((next = reader.readLine()) != null) {
+      if (!next.isEmpty() && (next.charAt(0) == ' ' || next.charAt(0) == '\t')) {
+        line.append(next, 1, next.length());
+        continue;
+      }
+      if (line.length() > 0) {
+        parser.accept(line.toString());
+        if (parser.events.size() >= chunkSize) {
+          sink.accept(parser.events);
+          parser.events = new ArrayList<>();
+        }
+      }
+      line.setLength(0);
+      line.append(next);
+    }
+    if (line.length() > 0) {
+      parser.accept(line.toString());
+    }
+    if (!parser.events.isEmpty()) {
+      sink.accept(parser.events);
+    }
+    skipped.addAndGet(parser.skipped);
+  }
+
+  /**
+   * Returns the number of events that couldn't be read, such as ones with an invalid date, over
+   * all reads by this importer so far.
+   */
+  public long getSkipped() {
+    return skipped.get();
+  }
+
+  /**
+   * Applies {@code reader} to each of {@code paths} on a pool of its own, since the work blocks
+   * on file I/O, and returns the results in the order of the paths.
+   */
+  private static <T> List<T> inParallel(Collection<Path> paths, PathReader<T> reader)
+      throws IOException {
+    int threads = Math.max(1, Math.min(paths.size(), Runtime.getRuntime().availableProcessors()));
+    ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "ics-import");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      List<Future<T>> futures = new ArrayList<>(paths.size());
+      for (Path path : paths) {
+        futures.add(pool.submit(() -> reader.read(path)));
+      }
+      List<T> results = new ArrayList<>(futures.size());
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading calendar files");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException("Failed to read calendar files", e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private interface PathReader<T> {
+    T read(Path path) throws IOException;
+  }
+
+  private String encode(String attendee) {
+    String existing = dictionary.putIfAbsent(attendee, attendee);
+    return existing == null ? attendee : existing;
+  }
+
+  /**
+   * Turns unfolded content lines into events.
+   */
+  private final class Parser {
+    // Replaced by a new list once a chunk has been handed on.
+    private List<Event> events = new ArrayList<>();
+    private int skipped;
+
+    // Nesting of components inside the current VEVENT, or -1 outside of one.
+    private int depth = -1;
+    private String title;
+    private String start;
+    private String end;
+    private String duration;
+    private final List<String> attendees = new ArrayList<>();
+
+    void accept(String line) {
+      int colon = valueStart(line);
+      if (colon < 0) {
+        return;
+      }
+      int nameEnd = line.indexOf(';');
+      if (nameEnd < 0 || nameEnd > colon) {
+        nameEnd = colon;
+      }
+      String name = line.substring(0, nameEnd);
+      String value = line.substring(colon + 1);
+
+      if (name.equalsIgnoreCase("BEGIN")) {
+        if (depth >= 0) {
+          depth++;
+        } else if (value.equalsIgnoreCase("VEVENT")) {
+          depth = 0;
+          title = "";
+          start = null;
+          end = null;
+          duration = null;
+          attendees.clear();
+        }
+      } else if (name.equalsIgnoreCase("END")) {
+        if (depth == 0) {
+          finishEvent();
+        }
+        if (depth >= 0) {
+          depth--;
+        }
+      } else if (depth == 0) {
+        // Properties of nested components, such as alarms, aren't the event's.
+        if (name.equalsIgnoreCase("SUMMARY")) {
+          title = unescape(value);
+        } else if (name.equalsIgnoreCase("DTSTART")) {
+          start = value.trim();
+        } else if (name.equalsIgnoreCase("DTEND")) {
+          end = value.trim();
+        } else if (name.equalsIgnoreCase("DURATION")) {
+          duration = value.trim();
+        } else if (name.equalsIgnoreCase("ATTENDEE")) {
+          String address = value.trim();
+          if (address.regionMatches(true, 0, "mailto:", 0, 7)) {
+            address = address.substring(7);
+          }
+          if (!address.isEmpty()) {
+            attendees.add(encode(address));
+          }
+        }
+      }
+    }
+
+    private void finishEvent() {
+      try {
+        if (start == null) {
+          throw new IllegalArgumentException("missing DTSTART");
+        }
+        long startMinute = minutes(start);
+        long endMinute;
+        if (end != null) {
+          endMinute = minutes(end);
+        } else if (duration != null) {
+          endMinute = startMinute + durationMinutes(duration);
+        } else {
+          // Without an end, a DATE lasts the day and a DATE-TIME is an instant.
+          endMinute = start.length() == 8 ? startMinute + MINUTES_PER_DAY : startMinute;
+        }
+        // Minutes are counted from the start day, so cut the event off at its midnight.
+        long dayStart = startMinute - Math.floorMod(startMinute, MINUTES_PER_DAY);
+        int from = (int) (startMinute - dayStart);
+        int to = (int) Math.max(from, Math.min(endMinute - dayStart, MINUTES_PER_DAY));
+        events.add(new Event(title, TimeRange.fromStartEnd(from, to, false), attendees));
+      } catch (IllegalArgumentException | DateTimeException e) {
+        skipped++;
+      }
+    }
+  }
+
+  /**
+   * Returns the position of the colon that separates a content line's name and parameters from
+   * its value, skipping colons in quoted parameter values, or -1 if there is none.
+   */
+  private static int valueStart(String line) {
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        quoted = !quoted;
+      } else if (c == ':' && !quoted) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Converts a DATE ({@code 20200101}) or DATE-TIME ({@code 20200101T093000}, optionally ending
+   * in {@code Z}) to minutes since the epoch.
+   */
+  static long minutes(String value) {
+    if (value.length() != 8 && !(value.length() >= 15 && value.charAt(8) == 'T')) {
+      throw new IllegalArgumentException("not a date: " + value);
+    }
+    long days =
+        LocalDate.of(digits(value, 0, 4), digits(value, 4, 6), digits(value, 6, 8)).toEpochDay();
+    if (value.length() == 8) {
+      return days * MINUTES_PER_DAY;
+    }
+    return days * MINUTES_PER_DAY + digits(value, 9, 11) * 60 + digits(value, 11, 13);
+  }
+
+  /**
+   * Converts a DURATION such as {@code PT1H30M}, {@code P1D} or {@code P1W} to minutes, ignoring
+   * seconds.
+   */
+  static long durationMinutes(String value) {
+    int i = 0;
+    boolean negative = false;
+    if (i < value.length() && (value.charAt(i) == '+' || value.charAt(i) == '-')) {
+      negative = value.charAt(i++) == '-';
+    }
+    if (i >= value.length() || value.charAt(i++) != 'P') {
+      throw new IllegalArgumentException("not a duration: " + value);
+    }
+    long minutes = 0;
+    long number = 0;
+    boolean sawDigit = false;
+    for (; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c >= '0' && c <= '9') {
+        number = number * 10 + (c - '0');
+        sawDigit = true;
+        continue;
+      }
+      if (c == 'T') {
+        continue;
+      }
+      if (!sawDigit) {
+        throw new IllegalArgumentException("not a duration: " + value);
+      }
+      switch (c) {
+        case 'W':
+          minutes += number * 7 * MINUTES_PER_DAY;
+          break;
+        case 'D':
+          minutes += number * MINUTES_PER_DAY;
+          break;
+        case 'H':
+          minutes += number * 60;
+          break;
+        case 'M':
+          minutes += number;
+          break;
+        case 'S':
+          break;
+        default:
+          throw new IllegalArgumentException("not a duration: " + value);
+      }
+      number = 0;
+      sawDigit = false;
+    }
+    return negative ? -minutes : minutes;
+  }
+
+  private static int digits(String value, int from, int to) {
+    int number = 0;
+    for (int i = from; i < to; i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        throw new IllegalArgumentException("not a number: " + value);
+      }
+      number = number * 10 + (c - '0');
+    }
+    return number;
+  }
+
+  private static String unescape(String text) {
+    if (text.indexOf('\\') < 0) {
+      return text;
+    }
+    StringBuilder result = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '\\' && i + 1 < text.length()) {
+        char escaped = text.charAt(++i);
+        result.append(escaped == 'n' || escaped == 'N' ? '\n' : escaped);
+      } else {
+        result.append(c);
+      }
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,134 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+/**
+ * A static augmented interval tree. The intervals are sorted by start and kept in arrays; the
+ * tree is implicit, with the middle of every slice as the root of that slice's subtree, and
+ * {@code maxEnds} holding the largest end in each subtree. Finding the k intervals that overlap a
+ * window visits O(log n + k) nodes when, as in calendars, few intervals span a large part of the
+ * others. Storing three longs per interval keeps millions of events cheap to hold.
+ */
+final class IntervalTree {
+
+  /**
+   * Receives the intervals found by {@link #forEachOverlapping}.
+   */
+  interface Visitor {
+    void visit(long start, long end);
+  }
+
+  private final long[] starts;
+  private final long[] ends;
+  private final long[] maxEnds;
+
+  /**
+   * Builds a tree over the first {@code size} intervals. The arrays are sorted in place and then
+   * owned by the tree.
+   */
+  IntervalTree(long[] starts, long[] ends, int size) {
+    sort(starts, ends, 0, size - 1);
+    this.starts = starts;
+    this.ends = ends;
+    this.maxEnds = new long[size];
+    buildMaxEnds(0, size);
+  }
+
+  /**
+   * Calls {@code visitor} for every interval that overlaps {@code [from, to)}, in order of start.
+   */
+  void forEachOverlapping(long from, long to, Visitor visitor) {
+    visit(0, maxEnds.length, from, to, visitor);
+  }
+
+  private void visit(int low, int high, long from, long to, Visitor visitor) {
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (maxEnds[middle] <= from) {
+        // Everything in this subtree ends before the window starts.
+        return;
+      }
+      visit(low, middle, from, to, visitor);
+      if (starts[middle] >= to) {
+        // This and everything to its right start after the window ends.
+        return;
+      }
+      if (ends[middle] > from) {
+        visitor.visit(starts[middle], ends[middle]);
+      }
+      low = middle + 1;
+    }
+  }
+
+  private long buildMaxEnds(int low, int high) {
+    if (low >= high) {
+      return Long.MIN_VALUE;
+    }
+    int middle = (low + high) >>> 1;
+    long maxEnd = Math.max(ends[middle],
+        Math.max(buildMaxEnds(low, middle), buildMaxEnds(middle + 1, high)));
+    maxEnds[middle] = maxEnd;
+    return maxEnd;
+  }
+
+  /**
+   * Sorts {@code starts[low..high]} in place, moving {@code ends} along with it. Recursing only
+   * into the smaller half bounds the stack depth at O(log n).
+   */
+  private static void sort(long[] starts, long[] ends, int low, int high) {
+    while (high - low > 16) {
+      int middle = (low + high) >>> 1;
+      long pivot = median(starts[low], starts[middle], starts[high]);
+      int i = low;
+      int j = high;
+      while (i <= j) {
+        while (starts[i] < pivot) {
+          i++;
+        }
+        while (starts[j] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          swap(starts, ends, i++, j--);
+        }
+      }
+      if (j - low < high - i) {
+        sort(starts, ends, low, j);
+        low = i;
+      } else {
+        sort(starts, ends, i, high);
+        high = j;
+      }
+    }
+    for (int i = low + 1; i <= high; i++) {
+      for (int j = i; j > low && starts[j - 1] > starts[j]; j--) {
+        swap(starts, ends, j - 1, j);
+      }
+    }
+  }
+
+  private static long median(long a, long b, long c) {
+    return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+  }
+
+  private static void swap(long[] starts, long[] ends, int i, int j) {
+    long start = starts[i];
+    starts[i] = starts[j];
+    starts[j] = start;
+    long end = ends[i];
+    ends[i] = ends[j];
+    ends[j] = end;
+  }
+}
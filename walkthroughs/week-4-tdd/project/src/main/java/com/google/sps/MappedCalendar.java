@@ -0,0 +1,360 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The busy intervals of an {@link EventIndex}, stored in a compact binary file that is queried
+ * in place through memory mapping. Opening one only maps the file, so it takes about the same
+ * time whatever the size of the calendar, and the data lives in the page cache rather than on
+ * the heap.
+ *
+ * <p>The file holds, in order, all big-endian:
+ *
+ * <ul>
+ *   <li>a header: the magic number, the format version, the number of attendees, a reserved
+ *       int and the number of intervals as a long;
+ *   <li>the attendee dictionary: {@code attendees + 1} int offsets into a pool of UTF-8 names
+ *       sorted by their bytes, followed by the pool, padded to a multiple of 8 bytes;
+ *   <li>the offset table: {@code attendees + 1} longs giving the index of each attendee's first
+ *       interval, so attendee i owns intervals {@code [offset[i], offset[i + 1])};
+ *   <li>the intervals: fixed-width records of an int start and an int end, sorted and merged
+ *       per attendee as in {@link EventIndex}.
+ * </ul>
+ *
+ * <p>A lookup binary-searches the dictionary by comparing bytes in the mapped file, and queries
+ * read interval records straight from it. Intervals are mapped in chunks, since one mapping is
+ * limited to 2 GiB, so the file may be larger than that as long as everything before the
+ * intervals isn't. Event titles aren't stored, as no query needs them. Instances are immutable
+ * and can be shared between threads.
+ */
+public final class MappedCalendar {
+  private static final int MAGIC = 0x43414C31; // "CAL1"
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_BYTES = 24;
+  private static final int INTERVAL_BYTES = 8;
+  // A multiple of INTERVAL_BYTES, so no record spans two chunks.
+  private static final long CHUNK_BYTES = 1L << 30;
+
+  // Everything before the intervals. Only absolute gets are used, so it can be shared.
+  private final ByteBuffer directory;
+  private final ByteBuffer[] intervals;
+  private final int attendeeCount;
+  private final int poolStart;
+  private final int offsetTableStart;
+
+  private MappedCalendar(ByteBuffer directory, ByteBuffer[] intervals) {
+    this.directory = directory;
+    this.intervals = intervals;
+    attendeeCount = directory.getInt(8);
+    poolStart = HEADER_BYTES + (attendeeCount + 1) * Integer.BYTES;
+    offsetTableStart = pad(poolStart + directory.getInt(poolStart - Integer.BYTES));
+  }
+
+  /**
+   * Writes the busy intervals of every attendee in {@code index} to {@code path}, replacing any
+   * file already there. The file is written next to {@code path} and then moved over it
+   * atomically, so calendars already open on the old file keep reading it undisturbed.
+   */
+  public static void write(Path path, EventIndex index) throws IOException {
+    Path directory = path.toAbsolutePath().getParent();
+    Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+    try {
+      writeTo(temp, index);
+      Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static void writeTo(Path path, EventIndex index) throws IOException {
+    // Names are looked up by the original string, as names with unpaired surrogates don't
+    // survive a round trip through UTF-8.
+    List<Name> names = new ArrayList<>(index.getAttendees().size());
+    for (String attendee : index.getAttendees()) {
+      names.add(new Name(attendee));
+    }
+    names.sort((a, b) -> compareBytes(a.bytes, b.bytes));
+
+    long intervalCount = 0;
+    for (String attendee : index.getAttendees()) {
+      intervalCount += index.getBusyIntervals(attendee).length / 2;
+    }
+
+    try (OutputStream file = Files.newOutputStream(path);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(names.size());
+      out.writeInt(0);
+      out.writeLong(intervalCount);
+
+      int poolBytes = 0;
+      out.writeInt(0);
+      for (Name name : names) {
+        poolBytes += name.bytes.length;
+        out.writeInt(poolBytes);
+      }
+      for (Name name : names) {
+        out.write(name.bytes);
+      }
+      int poolStart = HEADER_BYTES + (names.size() + 1) * Integer.BYTES;
+      for (int i = poolStart + poolBytes; i < pad(poolStart + poolBytes); i++) {
+        out.writeByte(0);
+      }
+
+      long offset = 0;
+      out.writeLong(offset);
+      for (Name name : names) {
+        offset += index.getBusyIntervals(name.attendee).length / 2;
+        out.writeLong(offset);
+      }
+      for (Name name : names) {
+        for (int point : index.getBusyIntervals(name.attendee)) {
+          out.writeInt(point);
+        }
+      }
+    }
+  }
+
+  /**
+   * Maps the calendar in {@code path}, which must have been made by {@link #write}.
+   */
+  public static MappedCalendar open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_BYTES) {
+        throw new IOException("Not a calendar file: " + path);
+      }
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+      if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION) {
+        throw new IOException("Not a calendar file, or one of another version: " + path);
+      }
+      int attendeeCount = header.getInt(8);
+      long intervalCount = header.getLong(16);
+
+      // The dictionary's size is only known once its last name offset has been read.
+      long poolStart = HEADER_BYTES + (attendeeCount + 1L) * Integer.BYTES;
+      if (attendeeCount < 0 || poolStart > size) {
+        throw new IOException("Calendar file is truncated: " + path);
+      }
+      int poolBytes = channel.map(FileChannel.MapMode.READ_ONLY, poolStart - Integer.BYTES,
+          Integer.BYTES).getInt(0);
+      long intervalsStart = pad(poolStart + poolBytes) + (attendeeCount + 1L) * Long.BYTES;
+      long intervalBytes = intervalCount * INTERVAL_BYTES;
+      if (intervalsStart > Integer.MAX_VALUE || intervalsStart + intervalBytes != size) {
+        throw new IOException("Calendar file is truncated or too large: " + path);
+      }
+
+      ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, 0, intervalsStart);
+      ByteBuffer[] intervals =
+          new ByteBuffer[(int) ((intervalBytes + CHUNK_BYTES - 1) / CHUNK_BYTES)];
+      for (int chunk = 0; chunk < intervals.length; chunk++) {
+        long from = chunk * CHUNK_BYTES;
+        intervals[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, intervalsStart + from,
+            Math.min(CHUNK_BYTES, intervalBytes - from));
+      }
+      // The mappings stay valid after the channel is closed.
+      return new MappedCalendar(directory, intervals);
+    }
+  }
+
+  /**
+   * Returns the number of attendees with at least one busy interval.
+   */
+  public int getAttendeeCount() {
+    return attendeeCount;
+  }
+
+  /**
+   * Finds the times at which everyone in {@code request} is free, exactly like
+   * {@link FindMeetingQuery#query(EventIndex, MeetingRequest)}, reading intervals from the
+   * mapped file. Only the optional attendees' intervals are copied, to pick the best group.
+   */
+  public Collection<TimeRange> query(MeetingRequest request) {
+    Collection<String> reqAttendees = request.getAttendees();
+    long reqDuration = request.getDuration();
+
+    // corner case: no attendees in the request
+    if (reqAttendees.isEmpty() && request.getOptionalAttendees().isEmpty()) {
+      return Arrays.asList(TimeRange.WHOLE_DAY);
+    }
+
+    // corner case: requested duration more than the day duration
+    if (reqDuration > TimeRange.WHOLE_DAY.duration()) {
+      return Arrays.asList();
+    }
+
+    // corner case: only optional attendees, so the whole day works for everyone mandatory
+    if (reqAttendees.isEmpty()) {
+      return OptionalAttendeeCoverage.query(
+          this::busyIntervals, request, Arrays.asList(TimeRange.WHOLE_DAY));
+    }
+
+    // One cursor per attendee with intervals, each walking that attendee's records.
+    long[] positions = new long[reqAttendees.size()];
+    long[] ends = new long[reqAttendees.size()];
+    int cursors = 0;
+    for (String attendee : reqAttendees) {
+      int id = find(attendee);
+      if (id >= 0 && firstInterval(id) < firstInterval(id + 1)) {
+        positions[cursors] = firstInterval(id);
+        ends[cursors++] = firstInterval(id + 1);
+      }
+    }
+
+    // Sweep the intervals in start order, picking the earliest next start of the few cursors.
+    List<TimeRange> possibleMeetingTimes = new ArrayList<>();
+    int possibleStartTime = TimeRange.START_OF_DAY;
+    while (true) {
+      int earliest = -1;
+      int earliestStart = Integer.MAX_VALUE;
+      for (int cursor = 0; cursor < cursors; cursor++) {
+        if (positions[cursor] < ends[cursor]) {
+          int start = intervalPoint(positions[cursor], 0);
+          if (start < earliestStart) {
+            earliest = cursor;
+            earliestStart = start;
+          }
+        }
+      }
+      if (earliest < 0) {
+        break;
+      }
+      if (earliestStart - possibleStartTime >= reqDuration) {
+        possibleMeetingTimes.add(
+            TimeRange.fromStartEnd(possibleStartTime, earliestStart, false));
+      }
+      possibleStartTime =
+          Math.max(possibleStartTime, intervalPoint(positions[earliest]++, Integer.BYTES));
+    }
+    // include of the time from last event to the end of the day
+    if (TimeRange.END_OF_DAY + 1 - possibleStartTime >= reqDuration) {
+      possibleMeetingTimes.add(
+          TimeRange.fromStartEnd(possibleStartTime, TimeRange.END_OF_DAY, true));
+    }
+    return OptionalAttendeeCoverage.query(this::busyIntervals, request, possibleMeetingTimes);
+  }
+
+  /**
+   * Returns a copy of {@code attendee}'s busy intervals, flattened as in {@link EventIndex}.
+   */
+  int[] busyIntervals(String attendee) {
+    int id = find(attendee);
+    if (id < 0) {
+      return new int[0];
+    }
+    long first = firstInterval(id);
+    int[] busy = new int[(int) (firstInterval(id + 1) - first) * 2];
+    for (int i = 0; i < busy.length; i += 2) {
+      busy[i] = intervalPoint(first + i / 2, 0);
+      busy[i + 1] = intervalPoint(first + i / 2, Integer.BYTES);
+    }
+    return busy;
+  }
+
+  /**
+   * Returns the dictionary id of {@code attendee}, or -1 if they have no intervals.
+   */
+  private int find(String attendee) {
+    byte[] name = attendee.getBytes(StandardCharsets.UTF_8);
+    int low = 0;
+    int high = attendeeCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int from = poolStart + directory.getInt(HEADER_BYTES + mid * Integer.BYTES);
+      int to = poolStart + directory.getInt(HEADER_BYTES + (mid + 1) * Integer.BYTES);
+      int comparison = compareToName(from, to, name);
+      if (comparison < 0) {
+        low = mid + 1;
+      } else if (comparison > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Compares the stored name at {@code [from, to)} with {@code name}, as unsigned bytes.
+   */
+  private int compareToName(int from, int to, byte[] name) {
+    int length = Math.min(to - from, name.length);
+    for (int i = 0; i < length; i++) {
+      int comparison = Integer.compare(directory.get(from + i) & 0xff, name[i] & 0xff);
+      if (comparison != 0) {
+        return comparison;
+      }
+    }
+    return Integer.compare(to - from, name.length);
+  }
+
+  private long firstInterval(int id) {
+    return directory.getLong(offsetTableStart + id * Long.BYTES);
+  }
+
+  private int intervalPoint(long interval, int field) {
+    long position = interval * INTERVAL_BYTES + field;
+    return intervals[(int) (position / CHUNK_BYTES)].getInt((int) (position % CHUNK_BYTES));
+  }
+
+  private static int compareBytes(byte[] a, byte[] b) {
+    int length = Math.min(a.length, b.length);
+    for (int i = 0; i < length; i++) {
+      int comparison = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+      if (comparison != 0) {
+        return comparison;
+      }
+    }
+    return Integer.compare(a.length, b.length);
+  }
+
+  private static int pad(int position) {
+    return (position + 7) & ~7;
+  }
+
+  private static long pad(long position) {
+    return (position + 7) & ~7L;
+  }
+
+  /**
+   * An attendee together with their name's UTF-8 bytes, as stored in the dictionary.
+   */
+  private static final class Name {
+    final String attendee;
+    final byte[] bytes;
+
+    Name(String attendee) {
+      this.attendee = attendee;
+      this.bytes = attendee.getBytes(StandardCharsets.UTF_8);
+    }
+  }
+}
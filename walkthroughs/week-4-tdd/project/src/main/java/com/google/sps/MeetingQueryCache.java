@@ -0,0 +1,152 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded, least-recently-used cache of {@link FindMeetingQuery} results, keyed by the
+ * request's attendees, in any order, and duration.
+ *
+ * <p>Each entry is tagged with the calendar version of every attendee it was computed from. An
+ * {@link EventIndex} never changes its busy-interval arrays, and an updated index replaces only
+ * the arrays of attendees whose events changed, so the array itself serves as the version. A
+ * cached result is used only while every attendee's array is the one it was computed from, which
+ * means a change to one person's events invalidates only the entries that include them.
+ *
+ * <p>Instances are thread-safe. The lock is held for the lookup and the insert, never while a
+ * query runs.
+ */
+public final class MeetingQueryCache {
+  private final FindMeetingQuery query;
+  private final Map<Key, Entry> entries;
+
+  public MeetingQueryCache(FindMeetingQuery query, int maxEntries) {
+    this.query = query;
+    this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Returns the same times as {@link FindMeetingQuery#query(EventIndex, MeetingRequest)}, from the
+   * cache when none of the attendees' calendars changed since they were computed. The result is
+   * shared and read-only.
+   */
+  public Collection<TimeRange> query(EventIndex index, MeetingRequest request) {
+    Key key = new Key(request);
+    Entry entry;
+    synchronized (entries) {
+      entry = entries.get(key);
+    }
+    if (entry != null && entry.isCurrent(index)) {
+      return entry.result;
+    }
+
+    entry = new Entry(index, key,
+        Collections.unmodifiableList(new ArrayList<>(query.query(index, request))));
+    synchronized (entries) {
+      entries.put(key, entry);
+    }
+    return entry.result;
+  }
+
+  /**
+   * Returns the number of cached results, current or not.
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * The parts of a request that determine its result. Sets make the key independent of the order
+   * the attendees were given in.
+   */
+  private static final class Key {
+    private final Set<String> attendees;
+    private final Set<String> optionalAttendees;
+    private final long duration;
+    private final int hashCode;
+
+    Key(MeetingRequest request) {
+      attendees = new HashSet<>(request.getAttendees());
+      optionalAttendees = new HashSet<>(request.getOptionalAttendees());
+      duration = request.getDuration();
+      hashCode = (attendees.hashCode() * 31 + optionalAttendees.hashCode()) * 31
+          + Long.hashCode(duration);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return duration == key.duration
+          && attendees.equals(key.attendees)
+          && optionalAttendees.equals(key.optionalAttendees);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /**
+   * A result together with the calendar version of each attendee it depends on.
+   */
+  private static final class Entry {
+    private final String[] attendees;
+    private final int[][] versions;
+    private final Collection<TimeRange> result;
+
+    Entry(EventIndex index, Key key, Collection<TimeRange> result) {
+      int count = key.attendees.size() + key.optionalAttendees.size();
+      attendees = new String[count];
+      versions = new int[count][];
+      int i = 0;
+      for (String attendee : key.attendees) {
+        attendees[i] = attendee;
+        versions[i++] = index.getBusyIntervals(attendee);
+      }
+      for (String attendee : key.optionalAttendees) {
+        attendees[i] = attendee;
+        versions[i++] = index.getBusyIntervals(attendee);
+      }
+      this.result = result;
+    }
+
+    boolean isCurrent(EventIndex index) {
+      for (int i = 0; i < attendees.length; i++) {
+        if (index.getBusyIntervals(attendees[i]) != versions[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -24,12 +24,21 @@ public final class MeetingRequest {
   // All the people that should be attending this new meeting. Use a set to avoid duplicates.
   private final Collection<String> attendees = new HashSet<>();
 
+  // People who should attend if they can.
+  private final Collection<String> optionalAttendees = new HashSet<>();
+
   // The duration of the meeting in minutes.
   private final long duration;
 
   public MeetingRequest(Collection<String> attendees, long duration) {
+    this(attendees, Collections.emptySet(), duration);
+  }
+
+  public MeetingRequest(
+      Collection<String> attendees, Collection<String> optionalAttendees, long duration) {
     this.duration = duration;
     this.attendees.addAll(attendees);
+    this.optionalAttendees.addAll(optionalAttendees);
   }
 
   /**
@@ -39,6 +48,13 @@ public final class MeetingRequest {
     return Collections.unmodifiableCollection(attendees);
   }
 
+  /**
+   * Returns a read-only copy of the people who should attend this meeting if they can.
+   */
+  public Collection<String> getOptionalAttendees() {
+    return Collections.unmodifiableCollection(optionalAttendees);
+  }
+
   /**
    * Returns the duration of the meeting in minutes.
    */
@@ -0,0 +1,254 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Narrows the times at which every mandatory attendee is free down to those that the largest
+ * number of optional attendees can also make.
+ *
+ * <p>Each free range is cut into segments at every start and end of an optional attendee's busy
+ * interval, so within a segment the set of free optional attendees doesn't change; it is kept as
+ * a bitset. Any window of the requested duration can be slid left to a segment start without
+ * losing anyone, so only windows starting at segments have to be scored, by AND-ing the bitsets
+ * of the segments they cover. Windows that can't beat the best so far are dropped as soon as
+ * their count falls to it. With n optional attendees and s segments this costs
+ * O(s * s * n / 64) in the worst case, and typically close to O(s * n / 64).
+ */
+final class OptionalAttendeeCoverage {
+
+  // Disallow instances.
+  private OptionalAttendeeCoverage() {}
+
+  /**
+   * Returns the ranges within {@code mandatoryFree} that are long enough for {@code request} and
+   * during which the same largest possible group of its optional attendees is free, sorted by
+   * start. Where the ranges of different groups would overlap, the later one starts where the
+   * earlier one ends, and is dropped if that leaves it too short. If no optional attendee can
+   * make any time, this returns
+   * {@code mandatoryFree} unchanged, or nothing when the request has no mandatory attendees
+   * either, since then nobody could come.
+   */
+  static Collection<TimeRange> query(
+      EventIndex index, MeetingRequest request, Collection<TimeRange> mandatoryFree) {
+    return query(index::getBusyIntervals, request, mandatoryFree);
+  }
+
+  /**
+   * Like {@link #query(EventIndex, MeetingRequest, Collection)}, reading each optional
+   * attendee's busy intervals, sorted and merged as in {@link EventIndex}, from
+   * {@code busyIntervals}.
+   */
+  static Collection<TimeRange> query(Function<String, int[]> busyIntervals,
+      MeetingRequest request, Collection<TimeRange> mandatoryFree) {
+    Collection<String> optionalAttendees = request.getOptionalAttendees();
+    if (optionalAttendees.isEmpty()) {
+      return mandatoryFree;
+    }
+
+    long duration = request.getDuration();
+    List<int[]> optionalBusy = new ArrayList<>(optionalAttendees.size());
+    for (String attendee : optionalAttendees) {
+      optionalBusy.add(busyIntervals.apply(attendee));
+    }
+
+    List<Segments> runs = new ArrayList<>(mandatoryFree.size());
+    for (TimeRange range : mandatoryFree) {
+      if (range.duration() >= duration && range.duration() > 0) {
+        runs.add(new Segments(range.start(), range.end(), optionalBusy));
+      }
+    }
+
+    int best = -1;
+    for (Segments run : runs) {
+      best = Math.max(best, run.bestCount(best, optionalBusy.size(), duration));
+      if (best == optionalBusy.size()) {
+        break;
+      }
+    }
+    if (best <= 0) {
+      return request.getAttendees().isEmpty() ? Arrays.asList() : mandatoryFree;
+    }
+
+    List<TimeRange> ranges = new ArrayList<>();
+    for (Segments run : runs) {
+      run.addRanges(ranges, best, duration);
+    }
+    return ranges;
+  }
+
+  /**
+   * One range of mandatory free time, cut into segments with a fixed set of free optional
+   * attendees.
+   */
+  private static final class Segments {
+    // Segment i is [bounds[i], bounds[i + 1]).
+    private final int[] bounds;
+    // Bitset of the optional attendees who are free for all of segment i.
+    private final long[][] free;
+    // Scratch for the running intersection of a window.
+    private final long[] window;
+
+    Segments(int start, int end, List<int[]> optionalBusy) {
+      bounds = boundaries(start, end, optionalBusy);
+      int words = (optionalBusy.size() + Long.SIZE - 1) / Long.SIZE;
+      window = new long[words];
+      free = new long[bounds.length - 1][words];
+
+      for (long[] segment : free) {
+        for (int attendee = 0; attendee < optionalBusy.size(); attendee++) {
+          segment[attendee >>> 6] |= 1L << attendee;
+        }
+      }
+      for (int attendee = 0; attendee < optionalBusy.size(); attendee++) {
+        int[] busy = optionalBusy.get(attendee);
+        for (int i = 0; i < busy.length; i += 2) {
+          int from = Math.max(busy[i], start);
+          int to = Math.min(busy[i + 1], end);
+          if (from >= to) {
+            continue;
+          }
+          // Both ends are segment bounds, so these are exact hits.
+          int last = Arrays.binarySearch(bounds, to);
+          for (int segment = Arrays.binarySearch(bounds, from); segment < last; segment++) {
+            free[segment][attendee >>> 6] &= ~(1L << attendee);
+          }
+        }
+      }
+    }
+
+    /**
+     * Returns the largest number of optional attendees free for a whole window of
+     * {@code duration}, or {@code best} if no window here beats it.
+     */
+    int bestCount(int best, int optionalCount, long duration) {
+      for (int i = 0; i < free.length && best < optionalCount; i++) {
+        if (count(free[i]) <= best) {
+          continue;
+        }
+        int last = coverWindow(i, duration, best);
+        if (last < 0) {
+          continue;
+        }
+        best = Math.max(best, count(window));
+      }
+      return best;
+    }
+
+    /**
+     * Adds every range in which a fixed group of {@code best} optional attendees is free for at
+     * least {@code duration}, starting each after the previous one ends so they stay disjoint.
+     */
+    void addRanges(List<TimeRange> ranges, int best, long duration) {
+      int previousEnd = -1;
+      for (int i = 0; i < free.length; i++) {
+        if (count(free[i]) < best) {
+          continue;
+        }
+        int last = coverWindow(i, duration, best - 1);
+        if (last < 0 || count(window) < best) {
+          continue;
+        }
+        // Grow the range for as long as the same group stays free.
+        while (last + 1 < free.length && countAnd(window, free[last + 1]) == best) {
+          last++;
+          and(window, free[last]);
+        }
+        int start = Math.max(bounds[i], previousEnd);
+        int end = bounds[last + 1];
+        if (end - start >= duration) {
+          ranges.add(TimeRange.fromStartEnd(start, end, false));
+          previousEnd = end;
+        }
+      }
+    }
+
+    /**
+     * Intersects the segments from {@code first} until they span {@code duration}, leaving the
+     * result in {@code window}.
+     *
+     * @return the last segment covered, or -1 if the range ends first or the count drops to
+     *     {@code floor}
+     */
+    private int coverWindow(int first, long duration, int floor) {
+      System.arraycopy(free[first], 0, window, 0, window.length);
+      int last = first;
+      while (bounds[last + 1] - bounds[first] < duration) {
+        if (++last == free.length) {
+          return -1;
+        }
+        and(window, free[last]);
+        if (count(window) <= floor) {
+          return -1;
+        }
+      }
+      return last;
+    }
+
+    private static int[] boundaries(int start, int end, List<int[]> optionalBusy) {
+      int size = 2;
+      for (int[] busy : optionalBusy) {
+        size += busy.length;
+      }
+      int[] points = new int[size];
+      int count = 0;
+      points[count++] = start;
+      points[count++] = end;
+      for (int[] busy : optionalBusy) {
+        for (int point : busy) {
+          if (point > start && point < end) {
+            points[count++] = point;
+          }
+        }
+      }
+      Arrays.sort(points, 0, count);
+
+      int unique = 0;
+      for (int i = 0; i < count; i++) {
+        if (unique == 0 || points[i] != points[unique - 1]) {
+          points[unique++] = points[i];
+        }
+      }
+      return Arrays.copyOf(points, unique);
+    }
+  }
+
+  private static int count(long[] bits) {
+    int count = 0;
+    for (long word : bits) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  private static int countAnd(long[] a, long[] b) {
+    int count = 0;
+    for (int i = 0; i < a.length; i++) {
+      count += Long.bitCount(a[i] & b[i]);
+    }
+    return count;
+  }
+
+  private static void and(long[] target, long[] other) {
+    for (int i = 0; i < target.length; i++) {
+      target[i] &= other[i];
+    }
+  }
+}
@@ -0,0 +1,147 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable map from attendee to a value, split by key hash into {@link #SHARDS} shards. An
+ * updated copy made by {@link #with} copies only the shards whose keys changed and shares the
+ * rest, so a write that touches a few attendees costs O(n / SHARDS) instead of O(n) for n
+ * attendees. Instances can be shared between threads.
+ */
+final class ShardedMap<V> {
+  static final int SHARDS = 256;
+
+  // Null for shards without keys.
+  private final Map<String, V>[] shards;
+  private final int size;
+
+  private ShardedMap(Map<String, V>[] shards, int size) {
+    this.shards = shards;
+    this.size = size;
+  }
+
+  /**
+   * Returns a map with the entries of {@code entries}.
+   */
+  @SuppressWarnings("unchecked")
+  static <V> ShardedMap<V> of(Map<String, V> entries) {
+    Map<String, V>[] shards = new Map[SHARDS];
+    for (Map.Entry<String, V> entry : entries.entrySet()) {
+      int shard = shard(entry.getKey());
+      if (shards[shard] == null) {
+        shards[shard] = new HashMap<>();
+      }
+      shards[shard].put(entry.getKey(), entry.getValue());
+    }
+    return new ShardedMap<>(shards, entries.size());
+  }
+
+  /**
+   * Returns a copy of this map in which the key of each entry in {@code changes} maps to the
+   * given value, or is removed if the value is null.
+   */
+  ShardedMap<V> with(Map<String, V> changes) {
+    Map<String, V>[] shards = Arrays.copyOf(this.shards, SHARDS);
+    boolean[] copied = new boolean[SHARDS];
+    int size = this.size;
+    for (Map.Entry<String, V> change : changes.entrySet()) {
+      int shard = shard(change.getKey());
+      if (!copied[shard]) {
+        shards[shard] = shards[shard] == null ? new HashMap<>() : new HashMap<>(shards[shard]);
+        copied[shard] = true;
+      }
+      V previous = change.getValue() == null
+          ? shards[shard].remove(change.getKey())
+          : shards[shard].put(change.getKey(), change.getValue());
+      if (previous == null && change.getValue() != null) {
+        size++;
+      } else if (previous != null && change.getValue() == null) {
+        size--;
+      }
+    }
+    for (int shard = 0; shard < SHARDS; shard++) {
+      if (copied[shard] && shards[shard].isEmpty()) {
+        shards[shard] = null;
+      }
+    }
+    return new ShardedMap<>(shards, size);
+  }
+
+  /**
+   * Returns the value of {@code key}, or null if it has none.
+   */
+  V get(String key) {
+    Map<String, V> shard = shards[shard(key)];
+    return shard == null ? null : shard.get(key);
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns a read-only view of the keys.
+   */
+  Set<String> keySet() {
+    return new AbstractSet<String>() {
+      @Override
+      public Iterator<String> iterator() {
+        return new Iterator<String>() {
+          private int shard = -1;
+          private Iterator<String> keys = Collections.emptyIterator();
+
+          @Override
+          public boolean hasNext() {
+            while (!keys.hasNext() && ++shard < SHARDS) {
+              if (shards[shard] != null) {
+                keys = shards[shard].keySet().iterator();
+              }
+            }
+            return keys.hasNext();
+          }
+
+          @Override
+          public String next() {
+            hasNext();
+            return keys.next();
+          }
+        };
+      }
+
+      @Override
+      public boolean contains(Object key) {
+        return key instanceof String && get((String) key) != null;
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  private static int shard(String key) {
+    int hash = key.hashCode();
+    return (hash ^ (hash >>> 16)) & (SHARDS - 1);
+  }
+}
@@ -0,0 +1,115 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Finds meeting times directly on an {@link EventTable}. The rows of the requested attendees are
+ * gathered from the table's per-attendee lists into a reusable buffer, sorted, and swept once in
+ * order of start. Row numbers follow start order, so sorting them sorts the events. The class
+ * holds no state, so one instance can serve any number of threads.
+ *
+ * <p>The servlets query the {@link EventStore}, whose index is updated in place as events
+ * change, while an {@link EventTable} has to be rebuilt. This engine is therefore only run by the
+ * benchmarks and tests, to compare the column layout with the other engines.
+ */
+public final class TableMeetingQuery implements MeetingQueryEngine {
+  // Buffers up to this many rows are kept for the thread's next query. Larger ones are left to
+  // the garbage collector, so one huge query doesn't pin its buffer for the life of the thread.
+  private static final int MAX_KEPT_SCRATCH = 1 << 16;
+  private static final ThreadLocal<int[][]> SCRATCH = ThreadLocal.withInitial(() -> new int[1][]);
+
+  @Override
+  public Collection<TimeRange> query(Collection<Event> events, MeetingRequest request) {
+    return query(EventTable.of(events), request);
+  }
+
+  public Collection<TimeRange> query(EventTable table, MeetingRequest request) {
+    Collection<String> reqAttendees = request.getAttendees();
+    long reqDuration = request.getDuration();
+
+    // corner case: no attendees in the request
+    if (reqAttendees.isEmpty() && request.getOptionalAttendees().isEmpty()) {
+      return Arrays.asList(TimeRange.WHOLE_DAY);
+    }
+
+    // corner case: requested duration more than the day duration
+    if (reqDuration > TimeRange.WHOLE_DAY.duration()) {
+      return Arrays.asList();
+    }
+
+    // gather the rows of every requested attendee; a row shared by two of them appears twice,
+    // which the sweep doesn't mind
+    int count = 0;
+    for (String attendee : reqAttendees) {
+      int id = table.attendeeId(attendee);
+      if (id >= 0) {
+        count += table.endRow(id) - table.firstRow(id);
+      }
+    }
+    int[] rows = scratch(count);
+    int size = 0;
+    for (String attendee : reqAttendees) {
+      int id = table.attendeeId(attendee);
+      if (id >= 0) {
+        for (int i = table.firstRow(id); i < table.endRow(id); i++) {
+          rows[size++] = table.row(i);
+        }
+      }
+    }
+    Arrays.sort(rows, 0, size);
+
+    List<TimeRange> possibleMeetingTimes = new ArrayList<>();
+    int possibleStartTime = TimeRange.START_OF_DAY;
+    for (int i = 0; i < size; i++) {
+      int start = table.start(rows[i]);
+      int end = table.end(rows[i]);
+      // events without a duration don't make anyone busy
+      if (start == end) {
+        continue;
+      }
+      addPossibleTime(possibleMeetingTimes, possibleStartTime, start, reqDuration);
+      possibleStartTime = Math.max(possibleStartTime, end);
+    }
+    addPossibleTime(
+        possibleMeetingTimes, possibleStartTime, TimeRange.END_OF_DAY + 1, reqDuration);
+    return OptionalAttendeeCoverage.query(table::busyIntervals, request, possibleMeetingTimes);
+  }
+
+  private static int[] scratch(int size) {
+    if (size > MAX_KEPT_SCRATCH) {
+      return new int[size];
+    }
+    int[][] holder = SCRATCH.get();
+    if (holder[0] == null || holder[0].length < size) {
+      holder[0] = new int[Math.max(size, 64)];
+    }
+    return holder[0];
+  }
+
+  /**
+   * Adds a possible meeting time to the results if it is long enough.
+   */
+  private static void addPossibleTime(
+      List<TimeRange> possibleMeetingTimes, int start, int end, long reqDuration) {
+    if (end - start >= reqDuration) {
+      possibleMeetingTimes.add(TimeRange.fromStartEnd(start, end, false));
+    }
+  }
+}
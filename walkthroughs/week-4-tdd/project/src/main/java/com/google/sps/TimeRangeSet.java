@@ -0,0 +1,235 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable set of minutes, held as sorted, disjoint ranges. Ranges that overlap or touch are
+ * merged and ranges without a duration are dropped, so two sets with the same minutes are equal
+ * whatever ranges they were built from.
+ *
+ * <p>The ranges are kept flattened in one array as [start0, end0, start1, end1, ...], the same
+ * layout as the busy intervals in {@link EventIndex}. Every operation between two sets is a
+ * single merge-like pass over both arrays, so it takes time linear in their sizes.
+ */
+public final class TimeRangeSet {
+  public static final TimeRangeSet EMPTY = new TimeRangeSet(new int[0]);
+
+  // Truth tables for combine(), indexed by (in first set ? 2 : 0) + (in second set ? 1 : 0).
+  private static final int UNION = 0b1110;
+  private static final int INTERSECTION = 0b1000;
+  private static final int DIFFERENCE = 0b0100;
+
+  private final int[] bounds;
+
+  private TimeRangeSet(int[] bounds) {
+    this.bounds = bounds;
+  }
+
+  /**
+   * Returns the set of minutes in any of {@code ranges}.
+   */
+  public static TimeRangeSet of(Collection<TimeRange> ranges) {
+    List<TimeRange> sorted = new ArrayList<>(ranges);
+    Collections.sort(sorted, TimeRange.ORDER_BY_START);
+
+    int[] merged = new int[sorted.size() * 2];
+    int size = 0;
+    for (TimeRange range : sorted) {
+      if (range.duration() <= 0) {
+        continue;
+      }
+      if (size > 0 && range.start() <= merged[size - 1]) {
+        merged[size - 1] = Math.max(merged[size - 1], range.end());
+      } else {
+        merged[size++] = range.start();
+        merged[size++] = range.end();
+      }
+    }
+    return size == 0 ? EMPTY : new TimeRangeSet(Arrays.copyOf(merged, size));
+  }
+
+  public static TimeRangeSet of(TimeRange... ranges) {
+    return of(Arrays.asList(ranges));
+  }
+
+  /**
+   * Wraps flattened ranges that are already sorted, disjoint, not touching and not empty, such
+   * as those of {@link EventIndex}, without copying them.
+   */
+  static TimeRangeSet wrap(int[] bounds) {
+    return new TimeRangeSet(bounds);
+  }
+
+  /**
+   * Returns the flattened ranges. The array is shared and must not be modified.
+   */
+  int[] bounds() {
+    return bounds;
+  }
+
+  public boolean isEmpty() {
+    return bounds.length == 0;
+  }
+
+  /**
+   * Returns the number of separate ranges in the set.
+   */
+  public int rangeCount() {
+    return bounds.length / 2;
+  }
+
+  /**
+   * Returns the number of minutes in the set.
+   */
+  public int duration() {
+    int duration = 0;
+    for (int i = 0; i < bounds.length; i += 2) {
+      duration += bounds[i + 1] - bounds[i];
+    }
+    return duration;
+  }
+
+  /**
+   * Returns the ranges of the set in order.
+   */
+  public List<TimeRange> toList() {
+    List<TimeRange> ranges = new ArrayList<>(bounds.length / 2);
+    for (int i = 0; i < bounds.length; i += 2) {
+      ranges.add(TimeRange.fromStartEnd(bounds[i], bounds[i + 1], false));
+    }
+    return ranges;
+  }
+
+  public boolean contains(int minute) {
+    // The insertion point of a minute that isn't a bound is odd exactly when it's inside a range.
+    int i = Arrays.binarySearch(bounds, minute);
+    return i >= 0 ? i % 2 == 0 : (-i - 1) % 2 == 1;
+  }
+
+  /**
+   * Checks if every minute of {@code range} is in the set.
+   */
+  public boolean contains(TimeRange range) {
+    if (range.duration() <= 0) {
+      return true;
+    }
+    int i = Arrays.binarySearch(bounds, range.start());
+    int rangeStart = i >= 0 ? i : -i - 2;
+    return rangeStart >= 0 && rangeStart % 2 == 0 && range.end() <= bounds[rangeStart + 1];
+  }
+
+  public TimeRangeSet union(TimeRangeSet other) {
+    return combine(this, other, UNION);
+  }
+
+  public TimeRangeSet intersect(TimeRangeSet other) {
+    return combine(this, other, INTERSECTION);
+  }
+
+  /**
+   * Returns the minutes in this set but not in {@code other}.
+   */
+  public TimeRangeSet subtract(TimeRangeSet other) {
+    return combine(this, other, DIFFERENCE);
+  }
+
+  /**
+   * Returns the minutes of the day that aren't in the set.
+   */
+  public TimeRangeSet complement() {
+    return complement(TimeRange.WHOLE_DAY);
+  }
+
+  /**
+   * Returns the minutes of {@code within} that aren't in the set.
+   */
+  public TimeRangeSet complement(TimeRange within) {
+    return of(within).subtract(this);
+  }
+
+  /**
+   * Returns the gaps in the day between the ranges of the set that are at least
+   * {@code duration} long, in order. For a set of busy times, these are the times a meeting of
+   * that length could be held.
+   */
+  public List<TimeRange> gapsAtLeast(long duration) {
+    List<TimeRange> gaps = new ArrayList<>();
+    int gapStart = TimeRange.START_OF_DAY;
+    for (int i = 0; i <= bounds.length; i += 2) {
+      int gapEnd = i < bounds.length ? bounds[i] : TimeRange.END_OF_DAY + 1;
+      if (gapEnd - gapStart >= duration && gapEnd > gapStart) {
+        gaps.add(TimeRange.fromStartEnd(gapStart, gapEnd, false));
+      }
+      if (i < bounds.length) {
+        gapStart = Math.max(gapStart, bounds[i + 1]);
+      }
+    }
+    return gaps;
+  }
+
+  /**
+   * Sweeps the bounds of both sets in order, tracking whether the sweep is inside each, and
+   * emits a bound wherever {@code table} says membership of the result changes.
+   */
+  private static TimeRangeSet combine(TimeRangeSet first, TimeRangeSet second, int table) {
+    int[] a = first.bounds;
+    int[] b = second.bounds;
+    int[] result = new int[a.length + b.length];
+    int size = 0;
+    int i = 0;
+    int j = 0;
+    boolean inResult = false;
+    while (i < a.length || j < b.length) {
+      int point = Math.min(i < a.length ? a[i] : Integer.MAX_VALUE,
+          j < b.length ? b[j] : Integer.MAX_VALUE);
+      // Even positions start a range and odd ones end it.
+      if (i < a.length && a[i] == point) {
+        i++;
+      }
+      if (j < b.length && b[j] == point) {
+        j++;
+      }
+      boolean inA = i % 2 == 1;
+      boolean inB = j % 2 == 1;
+      boolean in = ((table >> ((inA ? 2 : 0) + (inB ? 1 : 0))) & 1) == 1;
+      if (in != inResult) {
+        result[size++] = point;
+        inResult = in;
+      }
+    }
+    return size == 0 ? EMPTY : new TimeRangeSet(Arrays.copyOf(result, size));
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof TimeRangeSet && Arrays.equals(bounds, ((TimeRangeSet) other).bounds);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(bounds);
+  }
+
+  @Override
+  public String toString() {
+    return toList().toString();
+  }
+}
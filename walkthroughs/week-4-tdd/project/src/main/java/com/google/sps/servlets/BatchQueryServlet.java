@@ -0,0 +1,91 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.google.sps.CalendarJson;
+import com.google.sps.EventIndex;
+import com.google.sps.EventStore;
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Answers a JSON array of meeting requests in one call. The requests are evaluated in parallel
+ * against the same snapshot of the event index, so they all see the same events, and the
+ * response is an array holding the possible times for each request, in the order the requests
+ * were given. Batches of more than {@code query.maxBatch} requests (1000 by default) are turned
+ * away with 413.
+ */
+@WebServlet("/query/batch")
+public class BatchQueryServlet extends HttpServlet {
+  // Kept apart from the common pool so large batches can't starve other users of it.
+  private static final ForkJoinPool POOL = new ForkJoinPool();
+  private static final Type ANSWERS = new TypeToken<List<Collection<TimeRange>>>() {}.getType();
+  private static final int MAX_BATCH = Integer.getInteger("query.maxBatch", 1000);
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    MeetingRequest[] meetingRequests;
+    try {
+      meetingRequests = CalendarJson.GSON.fromJson(request.getReader(), MeetingRequest[].class);
+    } catch (JsonParseException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    }
+    if (meetingRequests == null || Arrays.asList(meetingRequests).contains(null)) {
+      response.sendError(
+          HttpServletResponse.SC_BAD_REQUEST, "Expected an array of meeting requests");
+      return;
+    }
+    if (meetingRequests.length > MAX_BATCH) {
+      response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+          "At most " + MAX_BATCH + " meeting requests per batch");
+      return;
+    }
+
+    EventIndex index = EventStore.getInstance().getIndex();
+
+    // A parallel stream run from inside a pool's task uses that pool's workers, and keeps the
+    // results in encounter order.
+    List<Collection<TimeRange>> answers;
+    try {
+      answers = POOL.submit(() -> Arrays.stream(meetingRequests)
+          .parallel()
+          .map(meetingRequest -> QueryServlet.QUERY_CACHE.query(index, meetingRequest))
+          .collect(Collectors.toList())).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while answering meeting requests", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to answer meeting requests", e.getCause());
+    }
+
+    response.setContentType("application/json");
+    CalendarJson.GSON.toJson(answers, ANSWERS, response.getWriter());
+  }
+}
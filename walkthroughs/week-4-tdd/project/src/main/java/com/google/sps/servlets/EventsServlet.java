@@ -0,0 +1,177 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.google.sps.CalendarJson;
+import com.google.sps.Event;
+import com.google.sps.EventStore;
+import com.google.sps.TimeRange;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Reads and changes the events in the {@link EventStore}.
+ *
+ * <ul>
+ *   <li>{@code GET /events} returns all events as a JSON object keyed by id.
+ *   <li>{@code POST /events} adds the event in the body and returns its id.
+ *   <li>{@code PUT /events?id=} replaces an event with the one in the body.
+ *   <li>{@code DELETE /events?id=} removes an event.
+ * </ul>
+ *
+ * Events are sent in the same JSON form that {@code /get-events} returns them in.
+ *
+ * <p>Changes must carry the token set in the {@code events.writeToken} system property as an
+ * {@code Authorization: Bearer} header. Without a token configured, as on the dev server, only
+ * requests from the local machine may change events.
+ */
+@WebServlet("/events")
+public class EventsServlet extends HttpServlet {
+  private static final Type EVENTS_BY_ID = new TypeToken<Map<Long, Event>>() {}.getType();
+  private static final String WRITE_TOKEN = System.getProperty("events.writeToken");
+
+  @Override
+  public void init() {
+    // Loads the store, so that anything it had to leave out is reported as it starts.
+    long skipped = EventStore.getInstance().getSkipped();
+    if (skipped > 0) {
+      System.err.println("Skipped " + skipped + " unreadable events while loading the store");
+    }
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    response.setContentType("application/json");
+    CalendarJson.GSON.toJson(
+        EventStore.getInstance().getEvents(), EVENTS_BY_ID, response.getWriter());
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!checkWriteAccess(request, response)) {
+      return;
+    }
+    Event event = readEvent(request, response);
+    if (event == null) {
+      return;
+    }
+
+    long id = EventStore.getInstance().add(event);
+    response.setContentType("application/json");
+    response.getWriter().println(String.format("{ \"id\": %d }", id));
+  }
+
+  @Override
+  public void doPut(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!checkWriteAccess(request, response)) {
+      return;
+    }
+    Long id = readId(request, response);
+    if (id == null) {
+      return;
+    }
+    Event event = readEvent(request, response);
+    if (event == null) {
+      return;
+    }
+
+    if (!EventStore.getInstance().update(id, event)) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+    }
+  }
+
+  @Override
+  public void doDelete(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    if (!checkWriteAccess(request, response)) {
+      return;
+    }
+    Long id = readId(request, response);
+    if (id == null) {
+      return;
+    }
+
+    if (!EventStore.getInstance().delete(id)) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+    }
+  }
+
+  /**
+   * Returns whether the request may change events, or sends a 403 and returns false.
+   */
+  private static boolean checkWriteAccess(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    boolean allowed;
+    if (WRITE_TOKEN == null) {
+      String address = request.getRemoteAddr();
+      allowed = "127.0.0.1".equals(address) || "0:0:0:0:0:0:0:1".equals(address)
+          || "::1".equals(address);
+    } else {
+      String authorization = request.getHeader("Authorization");
+      // Compared in constant time, so the token can't be guessed a byte at a time.
+      allowed = authorization != null && MessageDigest.isEqual(
+          ("Bearer " + WRITE_TOKEN).getBytes(StandardCharsets.UTF_8),
+          authorization.getBytes(StandardCharsets.UTF_8));
+    }
+    if (!allowed) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN, "Not allowed to change events");
+    }
+    return allowed;
+  }
+
+  /**
+   * Returns the {@code id} parameter, or sends a 400 and returns null if it is missing or not a
+   * number.
+   */
+  private static Long readId(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    try {
+      return Long.parseLong(request.getParameter("id"));
+    } catch (NumberFormatException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected a numeric id");
+      return null;
+    }
+  }
+
+  /**
+   * Returns the event in the request body, or sends a 400 and returns null if it isn't a valid
+   * event within one day.
+   */
+  private static Event readEvent(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    try {
+      Event event = CalendarJson.GSON.fromJson(request.getReader(), Event.class);
+      if (event == null) {
+        throw new IllegalArgumentException("Expected an event");
+      }
+      if (!TimeRange.WHOLE_DAY.contains(event.getWhen())) {
+        throw new IllegalArgumentException("when must be within one day");
+      }
+      return event;
+    } catch (JsonParseException | IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return null;
+    }
+  }
+}
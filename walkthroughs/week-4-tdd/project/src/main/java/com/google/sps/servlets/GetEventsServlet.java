@@ -14,23 +14,145 @@
 
 package com.google.sps.servlets;
 
-import com.google.sps.Events;
-import com.google.gson.Gson;
+import com.google.sps.CalendarJson;
+import com.google.sps.EventStore;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+/**
+ * Returns all events as JSON. The response is encoded once per version of the event store, as
+ * UTF-8 bytes and gzipped bytes, and then copied out as is. It carries an {@code ETag}, so a
+ * client that already has the current events gets a 304 with no body.
+ */
 @WebServlet("/get-events")
 public class GetEventsServlet extends HttpServlet {
+  // Tells this process's versions apart from those of earlier ones, which restart from zero.
+  private static final String ETAG_PREFIX = "\"" + Long.toHexString(System.currentTimeMillis());
+
+  private static volatile EncodedEvents encodedEvents;
+
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    Gson gson = new Gson();
-    String jsonResponse = gson.toJson(Events.events);
+    EncodedEvents events = getEncodedEvents();
+
+    response.setHeader("ETag", events.etag);
+    response.setHeader("Vary", "Accept-Encoding");
+    if (matches(request.getHeader("If-None-Match"), events.etag)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
 
     // Send the JSON back as the response
-    response.setContentType("application/json");
-    response.getWriter().println(jsonResponse);
+    response.setContentType("application/json;charset=UTF-8");
+    byte[] body = events.json;
+    if (acceptsGzip(request.getHeader("Accept-Encoding"))) {
+      response.setHeader("Content-Encoding", "gzip");
+      body = events.gzip;
+    }
+    response.setContentLength(body.length);
+    response.getOutputStream().write(body);
+  }
+
+  /**
+   * Returns the encoded events for the store's current version, encoding them if needed.
+   */
+  private static EncodedEvents getEncodedEvents() throws IOException {
+    EventStore store = EventStore.getInstance();
+    long version = store.getVersion();
+    EncodedEvents events = encodedEvents;
+    if (events != null && events.version == version) {
+      return events;
+    }
+
+    events = new EncodedEvents(version,
+        CalendarJson.GSON.toJson(store.getEvents().values(), CalendarJson.EVENTS)
+            .getBytes(StandardCharsets.UTF_8));
+    // Only keep the encoding if no change was applied while it was made; otherwise it may mix
+    // two versions, and the next request encodes again.
+    if (version % 2 == 0 && store.getVersion() == version) {
+      encodedEvents = events;
+    }
+    return events;
+  }
+
+  /**
+   * Checks an {@code If-None-Match} header, which may list several tags, against {@code etag}.
+   */
+  private static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks whether an {@code Accept-Encoding} header allows gzip, either by name or through
+   * {@code *}, with a q-value above zero. An explicit entry for gzip wins over {@code *}.
+   */
+  private static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    double gzip = -1;
+    double wildcard = -1;
+    for (String entry : acceptEncoding.split(",")) {
+      String[] parts = entry.split(";");
+      String coding = parts[0].trim();
+      if (coding.equalsIgnoreCase("gzip") || coding.equalsIgnoreCase("x-gzip")) {
+        gzip = Math.max(gzip, quality(parts));
+      } else if (coding.equals("*")) {
+        wildcard = Math.max(wildcard, quality(parts));
+      }
+    }
+    return gzip >= 0 ? gzip > 0 : wildcard > 0;
+  }
+
+  /**
+   * Returns the q-value among the parameters of an {@code Accept-Encoding} entry, 1 if it has
+   * none, or 0 if it can't be read.
+   */
+  private static double quality(String[] parts) {
+    for (int i = 1; i < parts.length; i++) {
+      String parameter = parts[i].trim();
+      if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+        try {
+          return Double.parseDouble(parameter.substring(2).trim());
+        } catch (NumberFormatException e) {
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+
+  private static final class EncodedEvents {
+    private final long version;
+    private final String etag;
+    private final byte[] json;
+    private final byte[] gzip;
+
+    EncodedEvents(long version, byte[] json) throws IOException {
+      this.version = version;
+      this.etag = ETAG_PREFIX + "-" + version + "\"";
+      this.json = json;
+
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4 + 64);
+      try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+        out.write(json);
+      }
+      this.gzip = compressed.toByteArray();
+    }
   }
 }
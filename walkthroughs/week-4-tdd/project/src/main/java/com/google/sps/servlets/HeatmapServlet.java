@@ -0,0 +1,65 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.AvailabilityHeatmap;
+import com.google.sps.CalendarJson;
+import com.google.sps.EventStore;
+import com.google.sps.TimeRange;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Returns how many of the attendees given as repeated {@code attendee} parameters are free
+ * throughout each bucket of the day, as runs of buckets with the same count. The bucket size in
+ * minutes is the {@code granularity} parameter, 15 by default.
+ */
+@WebServlet("/availability/heatmap")
+public class HeatmapServlet extends HttpServlet {
+  private static final int DEFAULT_GRANULARITY = 15;
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String[] attendees = request.getParameterValues("attendee");
+    List<String> people = attendees == null ? Collections.emptyList() : Arrays.asList(attendees);
+
+    int granularity = DEFAULT_GRANULARITY;
+    String granularityParameter = request.getParameter("granularity");
+    if (granularityParameter != null) {
+      try {
+        granularity = Integer.parseInt(granularityParameter);
+      } catch (NumberFormatException e) {
+        granularity = -1;
+      }
+      if (granularity <= 0 || granularity > TimeRange.WHOLE_DAY.duration()) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+            "granularity must be a number of minutes from 1 to a whole day");
+        return;
+      }
+    }
+
+    List<AvailabilityHeatmap.Bucket> buckets =
+        AvailabilityHeatmap.query(EventStore.getInstance().getIndex(), people, granularity);
+
+    response.setContentType("application/json");
+    CalendarJson.GSON.toJson(buckets, response.getWriter());
+  }
+}
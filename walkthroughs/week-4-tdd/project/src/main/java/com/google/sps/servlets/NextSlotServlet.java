@@ -0,0 +1,100 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.CalendarJson;
+import com.google.sps.Event;
+import com.google.sps.EventStore;
+import com.google.sps.HorizonIndex;
+import com.google.sps.HorizonMeetingQuery;
+import com.google.sps.HorizonRange;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Returns the earliest slot of {@code duration} minutes within the next {@code days} days at
+ * which all attendees given as repeated {@code attendee} parameters are free, or null if there is
+ * none. The store's events have no dates, so they are taken to happen on every day of the window.
+ * The window starts on {@code firstDay}, in days since the epoch, which defaults to today in UTC.
+ * The response is a range in minutes since the epoch.
+ */
+@WebServlet("/availability/next")
+public class NextSlotServlet extends HttpServlet {
+  private static final int DEFAULT_DAYS = 7;
+  // The index is built per request, so the window is kept to about a month.
+  private static final int MAX_DAYS = 31;
+
+  private static final HorizonMeetingQuery QUERY = new HorizonMeetingQuery();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String[] attendees = request.getParameterValues("attendee");
+    List<String> people = attendees == null ? Collections.emptyList() : Arrays.asList(attendees);
+
+    long duration;
+    long firstDay;
+    long days;
+    try {
+      duration = getLong(request, "duration", -1);
+      firstDay = getLong(request, "firstDay", LocalDate.now(ZoneOffset.UTC).toEpochDay());
+      days = getLong(request, "days", DEFAULT_DAYS);
+    } catch (NumberFormatException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          "duration, firstDay and days must be numbers");
+      return;
+    }
+    if (duration <= 0) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          "duration must be a positive number of minutes");
+      return;
+    }
+    if (days <= 0 || days > MAX_DAYS) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          "days must be a number from 1 to " + MAX_DAYS);
+      return;
+    }
+
+    HorizonIndex.Builder builder = HorizonIndex.builder();
+    List<Event> events = new ArrayList<>(EventStore.getInstance().getEvents().values());
+    for (long day = firstDay; day < firstDay + days; day++) {
+      builder.addDay(day, events);
+    }
+    HorizonRange window = HorizonRange.fromStartEnd(
+        HorizonRange.ofDay(firstDay).start(), HorizonRange.ofDay(firstDay + days - 1).end());
+    HorizonRange slot = QUERY.firstFreeSlot(builder.build(), people, window, duration);
+
+    response.setContentType("application/json");
+    CalendarJson.GSON.toJson(slot, HorizonRange.class, response.getWriter());
+  }
+
+  /**
+   * Returns the parameter as a number, or its default if it is missing.
+   *
+   * @throws NumberFormatException if the parameter isn't a number
+   */
+  private static long getLong(HttpServletRequest request, String name, long defaultValue) {
+    String value = request.getParameter(name);
+    return value == null ? defaultValue : Long.parseLong(value);
+  }
+}
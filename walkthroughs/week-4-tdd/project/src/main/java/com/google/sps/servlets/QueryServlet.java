@@ -14,38 +14,222 @@
 
 package com.google.sps.servlets;
 
-import com.google.sps.Events;
+import com.google.sps.CalendarJson;
+import com.google.sps.EventIndex;
+import com.google.sps.EventStore;
 import com.google.sps.FindMeetingQuery;
+import com.google.sps.MeetingQueryCache;
 import com.google.sps.MeetingRequest;
 import com.google.sps.TimeRange;
-import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-@WebServlet("/query")
+/**
+ * Finds meeting times off the container's request threads. Each query runs on a small, dedicated
+ * pool with a bounded queue, so expensive queries can't tie up the threads that serve everything
+ * else. When the queue is full the request is turned away at once with 503, and a query that
+ * takes longer than the timeout is answered with 503 as well; its task is cancelled, so one
+ * still waiting in the queue never runs. A query that has already started writing its answer when
+ * the timeout fires is given up to another timeout period to finish it.
+ *
+ * <p>The {@code query.threads}, {@code query.queue} and {@code query.timeoutMillis} system
+ * properties set the pool size (the number of processors by default), the queue length (100) and
+ * the timeout (10 seconds).
+ */
+@WebServlet(urlPatterns = "/query", asyncSupported = true)
 public class QueryServlet extends HttpServlet {
+  // Both are thread-safe, so every request thread can share them. BatchQueryServlet uses them
+  // too.
+  static final FindMeetingQuery FIND_MEETING_QUERY = new FindMeetingQuery();
+  static final MeetingQueryCache QUERY_CACHE = new MeetingQueryCache(FIND_MEETING_QUERY, 10000);
+
+  private static final int THREADS =
+      Integer.getInteger("query.threads", Runtime.getRuntime().availableProcessors());
+  private static final long TIMEOUT_MILLIS = Long.getLong("query.timeoutMillis", 10000);
+  // Rejects rather than blocks when the queue is full.
+  private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS,
+      0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Integer.getInteger("query.queue", 100)),
+      runnable -> {
+        Thread thread = new Thread(runnable, "meeting-query");
+        thread.setDaemon(true);
+        return thread;
+      });
+
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    Gson gson = new Gson();
+    // Convert the JSON to an instance of MeetingRequest, reading straight from the body.
+    MeetingRequest meetingRequest;
+    try {
+      meetingRequest = CalendarJson.GSON.fromJson(request.getReader(), MeetingRequest.class);
+    } catch (JsonParseException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    }
+    if (meetingRequest == null) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected a meeting request");
+      return;
+    }
+
+    long maxSlots = -1;
+    String limit = request.getParameter("limit");
+    if (limit != null) {
+      try {
+        maxSlots = Long.parseLong(limit);
+      } catch (NumberFormatException e) {
+        maxSlots = -1;
+      }
+      if (maxSlots < 0) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "limit must be a number >= 0");
+        return;
+      }
+    }
+    long slotLimit = maxSlots;
+
+    // Whichever of the query and the timeout claims the response first answers it.
+    AsyncContext async = request.startAsync();
+    AtomicBoolean answered = new AtomicBoolean();
+    CountDownLatch written = new CountDownLatch(1);
+    AtomicReference<Future<?>> task = new AtomicReference<>();
+    async.setTimeout(TIMEOUT_MILLIS);
+    async.addListener(new AsyncListener() {
+      @Override
+      public void onTimeout(AsyncEvent event) throws IOException {
+        if (answered.compareAndSet(false, true)) {
+          cancel(task.get());
+          reject(async, "Timed out finding meeting times");
+          return;
+        }
+        // The query claimed the response just before the timeout. Returning now would let the
+        // container answer with an error while the query is still writing, so wait for it.
+        try {
+          if (written.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            return;
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        System.err.println("Gave up waiting for meeting times to be written");
+        Future<?> query = task.get();
+        if (query != null) {
+          query.cancel(true);
+        }
+        async.complete();
+      }
 
-    // Convert the JSON to an instance of MeetingRequest.
-    MeetingRequest meetingRequest = gson.fromJson(request.getReader(), MeetingRequest.class);
+      @Override
+      public void onComplete(AsyncEvent event) {}
+
+      @Override
+      public void onError(AsyncEvent event) {
+        // If the query has already claimed the response, it completes it once done.
+        if (answered.compareAndSet(false, true)) {
+          cancel(task.get());
+          async.complete();
+        }
+      }
+
+      @Override
+      public void onStartAsync(AsyncEvent event) {}
+    });
+
+    try {
+      task.set(EXECUTOR.submit(
+          () -> answer(async, answered, written, meetingRequest, slotLimit)));
+    } catch (RejectedExecutionException e) {
+      if (answered.compareAndSet(false, true)) {
+        reject(async, "Too many meeting queries, try again shortly");
+      }
+    }
+  }
 
-    // Find the possible meeting times.
-    FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
-    Collection<TimeRange> answer =
-        findMeetingQuery.query(Arrays.asList(Events.events), meetingRequest);
+  /**
+   * Finds the meeting times and writes them, unless the request was answered in the meantime.
+   *
+   * @param written counted down once this has claimed and completed the response
+   */
+  private static void answer(AsyncContext async, AtomicBoolean answered, CountDownLatch written,
+      MeetingRequest meetingRequest, long maxSlots) {
+    // Nothing to do if the request timed out or failed while the query was queued.
+    if (answered.get()) {
+      return;
+    }
 
-    // Convert the times to JSON
-    String jsonResponse = gson.toJson(answer);
+    // Find the possible meeting times. With ?limit=n only the first n are found, and the sweep
+    // stops as soon as it has them.
+    Collection<TimeRange> answer;
+    RuntimeException failure = null;
+    try {
+      EventIndex index = EventStore.getInstance().getIndex();
+      answer = maxSlots < 0
+          ? QUERY_CACHE.query(index, meetingRequest)
+          : FIND_MEETING_QUERY.stream(index, meetingRequest)
+              .limit(maxSlots)
+              .collect(Collectors.toList());
+    } catch (RuntimeException e) {
+      answer = null;
+      failure = e;
+    }
+    if (!answered.compareAndSet(false, true)) {
+      return;
+    }
+
+    // Send the times back as JSON, written straight to the response
+    HttpServletResponse response = (HttpServletResponse) async.getResponse();
+    try {
+      if (failure != null) {
+        System.err.println("Failed to find meeting times: " + failure);
+        response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        return;
+      }
+      response.setContentType("application/json");
+      CalendarJson.GSON.toJson(answer, CalendarJson.TIME_RANGES, response.getWriter());
+    } catch (IOException e) {
+      System.err.println("Failed to send meeting times: " + e.getMessage());
+    } finally {
+      try {
+        async.complete();
+      } finally {
+        written.countDown();
+      }
+    }
+  }
+
+  @Override
+  public void destroy() {
+    EXECUTOR.shutdownNow();
+  }
+
+  private static void cancel(Future<?> task) {
+    // Null when the listener runs before the query has been submitted.
+    if (task != null) {
+      task.cancel(false);
+    }
+  }
 
-    // Send the JSON back as the response
-    response.setContentType("application/json");
-    response.getWriter().println(jsonResponse);
+  private static void reject(AsyncContext async, String message) throws IOException {
+    HttpServletResponse response = (HttpServletResponse) async.getResponse();
+    try {
+      response.setHeader("Retry-After", "1");
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, message);
+    } finally {
+      async.complete();
+    }
   }
 }
@@ -0,0 +1,102 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.JsonParseException;
+import com.google.sps.BulkScheduler;
+import com.google.sps.CalendarJson;
+import com.google.sps.EventStore;
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Places many meetings at once without double-booking anyone. The request body is
+ * {@code {"meetings": [{"request": {...}, "priority": n}, ...], "deadlineMillis": n}}, and the
+ * response gives the slot of each meeting in the same order, or null for those that couldn't be
+ * placed.
+ */
+@WebServlet("/schedule")
+public class ScheduleServlet extends HttpServlet {
+  private static final long DEFAULT_DEADLINE_MILLIS = 1000;
+  private static final long MAX_DEADLINE_MILLIS = 10000;
+  // Kept apart from the common pool so long searches can't starve other users of it.
+  private static final BulkScheduler SCHEDULER = new BulkScheduler(new ForkJoinPool());
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    ScheduleRequest scheduleRequest;
+    try {
+      scheduleRequest = CalendarJson.GSON.fromJson(request.getReader(), ScheduleRequest.class);
+    } catch (JsonParseException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    }
+    if (scheduleRequest == null || scheduleRequest.meetings == null) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected a list of meetings");
+      return;
+    }
+
+    List<BulkScheduler.Meeting> meetings = new ArrayList<>(scheduleRequest.meetings.size());
+    for (PrioritizedRequest meeting : scheduleRequest.meetings) {
+      if (meeting == null || meeting.request == null || meeting.priority < 0
+          || meeting.priority > BulkScheduler.Meeting.MAX_PRIORITY) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+            "Each meeting needs a request and a priority from 0 to "
+                + BulkScheduler.Meeting.MAX_PRIORITY);
+        return;
+      }
+      meetings.add(new BulkScheduler.Meeting(meeting.request, meeting.priority));
+    }
+    long deadline = scheduleRequest.deadlineMillis == null
+        ? DEFAULT_DEADLINE_MILLIS
+        : Math.max(0, Math.min(scheduleRequest.deadlineMillis, MAX_DEADLINE_MILLIS));
+
+    BulkScheduler.Schedule schedule =
+        SCHEDULER.schedule(EventStore.getInstance().getMasks(), meetings, deadline);
+
+    response.setContentType("application/json");
+    CalendarJson.GSON.toJson(new ScheduleResponse(schedule), response.getWriter());
+  }
+
+  private static final class ScheduleRequest {
+    List<PrioritizedRequest> meetings;
+    Long deadlineMillis;
+  }
+
+  private static final class PrioritizedRequest {
+    MeetingRequest request;
+    int priority;
+  }
+
+  private static final class ScheduleResponse {
+    final List<TimeRange> slots;
+    final boolean complete;
+    final boolean timedOut;
+
+    ScheduleResponse(BulkScheduler.Schedule schedule) {
+      slots = schedule.getSlots();
+      complete = schedule.isComplete();
+      timedOut = schedule.isTimedOut();
+    }
+  }
+}
@@ -0,0 +1,76 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class AvailabilityHeatmapTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+
+  @Test
+  public void countsFreeAttendeesPerBucket() {
+    // Events  :       |---A---|
+    //                     |---B---|
+    // Day     : |---------------------|
+    EventIndex index = EventIndex.of(Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(TIME_0800AM + 30, TIME_1000AM, false),
+            Arrays.asList(PERSON_B))));
+
+    List<AvailabilityHeatmap.Bucket> actual =
+        AvailabilityHeatmap.query(index, Arrays.asList(PERSON_A, PERSON_B, PERSON_C), 30);
+    List<AvailabilityHeatmap.Bucket> expected = Arrays.asList(
+        new AvailabilityHeatmap.Bucket(TimeRange.fromStartEnd(0, TIME_0800AM, false), 3),
+        new AvailabilityHeatmap.Bucket(
+            TimeRange.fromStartEnd(TIME_0800AM, TIME_0800AM + 30, false), 2),
+        new AvailabilityHeatmap.Bucket(
+            TimeRange.fromStartEnd(TIME_0800AM + 30, TIME_0900AM, false), 1),
+        new AvailabilityHeatmap.Bucket(TimeRange.fromStartEnd(TIME_0900AM, TIME_1000AM, false), 2),
+        new AvailabilityHeatmap.Bucket(
+            TimeRange.fromStartEnd(TIME_1000AM, TimeRange.END_OF_DAY, true), 3));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void busyForPartOfABucketCountsAsBusy() {
+    EventIndex index = EventIndex.of(Arrays.asList(new Event("Event 1",
+        TimeRange.fromStartDuration(TIME_0800AM + 10, 5), Arrays.asList(PERSON_A))));
+
+    List<AvailabilityHeatmap.Bucket> actual =
+        AvailabilityHeatmap.query(index, Arrays.asList(PERSON_A, PERSON_A), 60);
+    List<AvailabilityHeatmap.Bucket> expected = Arrays.asList(
+        new AvailabilityHeatmap.Bucket(TimeRange.fromStartEnd(0, TIME_0800AM, false), 1),
+        new AvailabilityHeatmap.Bucket(TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false), 0),
+        new AvailabilityHeatmap.Bucket(
+            TimeRange.fromStartEnd(TIME_0900AM, TimeRange.END_OF_DAY, true), 1));
+
+    Assert.assertEquals(expected, actual);
+  }
+}
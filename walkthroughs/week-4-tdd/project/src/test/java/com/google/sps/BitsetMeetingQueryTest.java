@@ -0,0 +1,86 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class BitsetMeetingQueryTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+
+  private final BitsetMeetingQuery query = new BitsetMeetingQuery();
+
+  @Test
+  public void eventsAcrossWordBoundaries() {
+    // Events: |--A--|   |--B--|
+    // Day   : |---------------------|
+    // Both events cross a 64-minute word boundary.
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(60, 130, false), Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(191, 1408, false), Arrays.asList(PERSON_B)));
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), 30);
+
+    Collection<TimeRange> actual = query.query(events, request);
+    Collection<TimeRange> expected = Arrays.asList(TimeRange.fromStartEnd(0, 60, false),
+        TimeRange.fromStartEnd(130, 191, false),
+        TimeRange.fromStartEnd(1408, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void eventUntilEndOfDay() {
+    Collection<Event> events = Arrays.asList(new Event("Event 1",
+        TimeRange.fromStartEnd(600, TimeRange.END_OF_DAY, true), Arrays.asList(PERSON_A)));
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), 60);
+
+    Collection<TimeRange> actual = query.query(events, request);
+    Collection<TimeRange> expected = Arrays.asList(TimeRange.fromStartEnd(0, 600, false));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void matchesFindMeetingQueryOnRandomCalendars() {
+    Random random = new Random(42);
+    FindMeetingQuery reference = new FindMeetingQuery();
+    String[] people = {"A", "B", "C", "D", "E", "F"};
+
+    for (int round = 0; round < 500; round++) {
+      List<Event> events = new ArrayList<>();
+      for (int i = random.nextInt(20); i > 0; i--) {
+        int start = random.nextInt(TimeRange.END_OF_DAY);
+        int end = start + 1 + random.nextInt(TimeRange.END_OF_DAY + 1 - start);
+        events.add(new Event("Event " + i, TimeRange.fromStartEnd(start, end, false),
+            Arrays.asList(people[random.nextInt(people.length)])));
+      }
+      int mandatory = random.nextInt(people.length);
+      MeetingRequest request = new MeetingRequest(Arrays.asList(people).subList(0, mandatory),
+          Arrays.asList(people).subList(mandatory, people.length), 1 + random.nextInt(120));
+
+      Assert.assertEquals(reference.query(events, request), query.query(events, request));
+    }
+  }
+}
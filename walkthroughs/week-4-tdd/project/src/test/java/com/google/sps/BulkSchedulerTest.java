@@ -0,0 +1,145 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class BulkSchedulerTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+
+  private final BulkScheduler scheduler = new BulkScheduler(new ForkJoinPool(4));
+
+  @Test
+  public void mostConstrainedMeetingGoesFirst() {
+    // Events  :       |--A--|     |-----A-----|
+    //                       |--------B--------|
+    // Day     : |---------------------------------|
+    // The A+B meeting only fits at the start of the day, so the A meeting must take the gap
+    // between the events even though the start of the day comes first.
+    BusyMasks masks = BusyMasks.of(Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(60, 60), Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(120, TimeRange.END_OF_DAY, true),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 3", TimeRange.fromStartEnd(180, TimeRange.END_OF_DAY, true),
+            Arrays.asList(PERSON_A))));
+    List<BulkScheduler.Meeting> meetings = Arrays.asList(
+        new BulkScheduler.Meeting(new MeetingRequest(Arrays.asList(PERSON_A), 60), 0),
+        new BulkScheduler.Meeting(new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), 60), 0));
+
+    BulkScheduler.Schedule schedule = scheduler.schedule(masks, meetings, 1000);
+
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartDuration(120, 60),
+        TimeRange.fromStartDuration(0, 60)), schedule.getSlots());
+    Assert.assertTrue(schedule.isComplete());
+    Assert.assertFalse(schedule.isTimedOut());
+  }
+
+  @Test
+  public void higherPriorityWinsWhenNotEverythingFits() {
+    // Only one hour is free, and both meetings need all of it.
+    BusyMasks masks = BusyMasks.of(Arrays.asList(new Event("Event 1",
+        TimeRange.fromStartEnd(60, TimeRange.END_OF_DAY, true), Arrays.asList(PERSON_A))));
+    List<BulkScheduler.Meeting> meetings = Arrays.asList(
+        new BulkScheduler.Meeting(new MeetingRequest(Arrays.asList(PERSON_A), 60), 1),
+        new BulkScheduler.Meeting(new MeetingRequest(Arrays.asList(PERSON_A), 60), 5));
+
+    BulkScheduler.Schedule schedule = scheduler.schedule(masks, meetings, 1000);
+
+    Assert.assertEquals(Arrays.asList(null, TimeRange.fromStartDuration(0, 60)),
+        schedule.getSlots());
+    Assert.assertFalse(schedule.isComplete());
+  }
+
+  @Test
+  public void meetingsWithoutSharedAttendeesMayOverlap() {
+    BusyMasks masks = BusyMasks.of(Arrays.asList());
+    List<BulkScheduler.Meeting> meetings = Arrays.asList(
+        new BulkScheduler.Meeting(new MeetingRequest(Arrays.asList(PERSON_A), 60), 0),
+        new BulkScheduler.Meeting(new MeetingRequest(Arrays.asList(PERSON_B), 60), 0));
+
+    BulkScheduler.Schedule schedule = scheduler.schedule(masks, meetings, 1000);
+
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartDuration(0, 60),
+        TimeRange.fromStartDuration(0, 60)), schedule.getSlots());
+  }
+
+  @Test
+  public void schedulesNeverConflictOnRandomCalendars() {
+    Random random = new Random(7);
+    String[] people = {"A", "B", "C", "D", "E", "F", "G", "H"};
+
+    for (int round = 0; round < 50; round++) {
+      List<Event> events = new ArrayList<>();
+      for (int i = random.nextInt(30); i > 0; i--) {
+        int start = random.nextInt(TimeRange.END_OF_DAY);
+        int end = start + 1 + random.nextInt(Math.min(120, TimeRange.END_OF_DAY + 1 - start));
+        events.add(new Event("Event " + i, TimeRange.fromStartEnd(start, end, false),
+            Arrays.asList(people[random.nextInt(people.length)])));
+      }
+      List<BulkScheduler.Meeting> meetings = new ArrayList<>();
+      for (int i = random.nextInt(20); i > 0; i--) {
+        List<String> attendees = new ArrayList<>();
+        for (int j = 1 + random.nextInt(3); j > 0; j--) {
+          attendees.add(people[random.nextInt(people.length)]);
+        }
+        meetings.add(new BulkScheduler.Meeting(
+            new MeetingRequest(attendees, 15 + random.nextInt(180)), random.nextInt(3)));
+      }
+
+      List<TimeRange> slots = scheduler.schedule(BusyMasks.of(events), meetings, 200).getSlots();
+
+      Assert.assertEquals(meetings.size(), slots.size());
+      for (int i = 0; i < slots.size(); i++) {
+        TimeRange slot = slots.get(i);
+        if (slot == null) {
+          continue;
+        }
+        MeetingRequest request = meetings.get(i).getRequest();
+        Assert.assertEquals(request.getDuration(), slot.duration());
+        Assert.assertTrue(TimeRange.WHOLE_DAY.contains(slot));
+        for (Event event : events) {
+          if (event.getWhen().overlaps(slot)) {
+            Assert.assertTrue(
+                Collections.disjoint(event.getAttendees(), request.getAttendees()));
+          }
+        }
+        for (int j = 0; j < i; j++) {
+          if (slots.get(j) != null && slots.get(j).overlaps(slot)) {
+            Assert.assertTrue(Collections.disjoint(
+                meetings.get(j).getRequest().getAttendees(), request.getAttendees()));
+          }
+        }
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void priorityAboveMaximumIsRejected() {
+    new BulkScheduler.Meeting(new MeetingRequest(Arrays.asList(PERSON_A), 60),
+        BulkScheduler.Meeting.MAX_PRIORITY + 1);
+  }
+}
@@ -0,0 +1,85 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import com.google.gson.JsonParseException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class CalendarJsonTest {
+
+  @Test
+  public void timeRangesKeepTheirForm() {
+    Collection<TimeRange> ranges =
+        Arrays.asList(TimeRange.fromStartDuration(0, 30), TimeRange.fromStartDuration(60, 90));
+
+    String json = CalendarJson.GSON.toJson(ranges, CalendarJson.TIME_RANGES);
+
+    Assert.assertEquals("[{\"start\":0,\"duration\":30},{\"start\":60,\"duration\":90}]", json);
+  }
+
+  @Test
+  public void eventRoundTrip() {
+    Event event = new Event(
+        "Event 1", TimeRange.fromStartDuration(480, 30), Arrays.asList("Person A", "Person B"));
+
+    String json = CalendarJson.GSON.toJson(event);
+
+    Assert.assertEquals(event, CalendarJson.GSON.fromJson(json, Event.class));
+  }
+
+  @Test
+  public void meetingRequestFromWebForm() {
+    // The web form sends the duration as a string.
+    MeetingRequest request = CalendarJson.GSON.fromJson(
+        "{\"duration\":\"30\",\"attendees\":[\"Person A\"],\"optionalAttendees\":[\"Person B\"],"
+            + "\"unknown\":{\"nested\":[1,2]}}",
+        MeetingRequest.class);
+
+    Assert.assertEquals(30, request.getDuration());
+    Assert.assertEquals(new HashSet<>(Arrays.asList("Person A")),
+        new HashSet<>(request.getAttendees()));
+    Assert.assertEquals(new HashSet<>(Arrays.asList("Person B")),
+        new HashSet<>(request.getOptionalAttendees()));
+  }
+
+  @Test(expected = JsonParseException.class)
+  public void eventWithoutAttendeesIsRejected() {
+    CalendarJson.GSON.fromJson(
+        "{\"title\":\"Event 1\",\"when\":{\"start\":0,\"duration\":30}}", Event.class);
+  }
+
+  @Test(expected = JsonParseException.class)
+  public void meetingRequestWithoutDurationIsRejected() {
+    CalendarJson.GSON.fromJson("{\"attendees\":[]}", MeetingRequest.class);
+  }
+
+  @Test(expected = JsonParseException.class)
+  public void meetingRequestWithMalformedDurationIsRejected() {
+    CalendarJson.GSON.fromJson("{\"attendees\":[],\"duration\":\"abc\"}", MeetingRequest.class);
+  }
+
+  @Test(expected = JsonParseException.class)
+  public void timeRangeWithFractionalStartIsRejected() {
+    CalendarJson.GSON.fromJson("{\"start\":1.5,\"duration\":30}", TimeRange.class);
+  }
+}
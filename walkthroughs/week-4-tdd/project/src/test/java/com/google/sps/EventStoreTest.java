@@ -0,0 +1,197 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class EventStoreTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+
+  private static final int DURATION_60_MINUTES = 60;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final FindMeetingQuery query = new FindMeetingQuery();
+
+  @Test
+  public void changesAreVisibleToQueries() throws IOException {
+    EventStore store = EventStore.inMemory(Collections.emptyList());
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_60_MINUTES);
+
+    long id = store.add(new Event("Event 1",
+        TimeRange.fromStartDuration(TIME_0800AM, DURATION_60_MINUTES), Arrays.asList(PERSON_A)));
+    Assert.assertEquals(
+        Arrays.asList(TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+            TimeRange.fromStartEnd(TIME_0900AM, TimeRange.END_OF_DAY, true)),
+        query.query(store.getIndex(), request));
+
+    // Moving the event to B frees A.
+    Assert.assertTrue(store.update(id, new Event("Event 1",
+        TimeRange.fromStartDuration(TIME_0800AM, DURATION_60_MINUTES), Arrays.asList(PERSON_B))));
+    Assert.assertEquals(
+        Arrays.asList(TimeRange.WHOLE_DAY), query.query(store.getIndex(), request));
+    Assert.assertEquals(Arrays.asList(PERSON_B), new ArrayList<>(store.getIndex().getAttendees()));
+
+    Assert.assertTrue(store.delete(id));
+    Assert.assertFalse(store.delete(id));
+    Assert.assertTrue(store.getIndex().getAttendees().isEmpty());
+  }
+
+  @Test
+  public void snapshotsDontChange() throws IOException {
+    EventStore store = EventStore.inMemory(Collections.emptyList());
+    EventIndex before = store.getIndex();
+    BusyMasks masksBefore = store.getMasks();
+
+    store.add(new Event("Event 1",
+        TimeRange.fromStartDuration(TIME_0800AM, DURATION_60_MINUTES), Arrays.asList(PERSON_A)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_60_MINUTES);
+    Assert.assertEquals(Arrays.asList(TimeRange.WHOLE_DAY), query.query(before, request));
+    Assert.assertEquals(Arrays.asList(TimeRange.WHOLE_DAY),
+        new BitsetMeetingQuery().query(masksBefore, request));
+  }
+
+  @Test
+  public void incrementalIndexMatchesRebuild() throws IOException {
+    Random random = new Random(42);
+    String[] people = {"A", "B", "C", "D"};
+    EventStore store = EventStore.inMemory(Collections.emptyList());
+    List<Long> ids = new ArrayList<>();
+
+    for (int round = 0; round < 300; round++) {
+      int start = random.nextInt(TimeRange.END_OF_DAY);
+      Event event = new Event("Event " + round,
+          TimeRange.fromStartDuration(start, 1 + random.nextInt(TimeRange.END_OF_DAY - start)),
+          Arrays.asList(people[random.nextInt(people.length)], people[random.nextInt(2)]));
+      int operation = ids.isEmpty() ? 0 : random.nextInt(3);
+      if (operation == 0) {
+        ids.add(store.add(event));
+      } else if (operation == 1) {
+        store.update(ids.get(random.nextInt(ids.size())), event);
+      } else {
+        store.delete(ids.remove(random.nextInt(ids.size())));
+      }
+
+      Collection<Event> events = store.getEvents().values();
+      MeetingRequest request = new MeetingRequest(
+          Arrays.asList(people).subList(0, 1 + random.nextInt(people.length)), 30);
+      Assert.assertEquals(query.query(events, request), query.query(store.getIndex(), request));
+      Assert.assertEquals(query.query(events, request),
+          new BitsetMeetingQuery().query(store.getMasks(), request));
+    }
+  }
+
+  @Test
+  public void journalRestoresEvents() throws IOException {
+    Path journal = folder.getRoot().toPath().resolve("events.ndjson");
+    Event first = new Event("Event 1",
+        TimeRange.fromStartDuration(TIME_0800AM, DURATION_60_MINUTES), Arrays.asList(PERSON_A));
+    Event second = new Event("Event 2",
+        TimeRange.fromStartDuration(TIME_0900AM, DURATION_60_MINUTES), Arrays.asList(PERSON_B));
+
+    EventStore store = EventStore.open(journal);
+    long firstId = store.add(first);
+    long secondId = store.add(second);
+    store.update(firstId, second);
+    store.delete(secondId);
+
+    EventStore restored = EventStore.open(journal);
+    Assert.assertEquals(Collections.singletonMap(firstId, second), restored.getEvents());
+    Assert.assertEquals(secondId + 1, restored.add(first));
+  }
+
+  @Test
+  public void journalIsCompactedOnOpen() throws IOException {
+    Path journal = folder.getRoot().toPath().resolve("events.ndjson");
+    Event first = new Event("Event 1",
+        TimeRange.fromStartDuration(TIME_0800AM, DURATION_60_MINUTES), Arrays.asList(PERSON_A));
+    Event second = new Event("Event 2",
+        TimeRange.fromStartDuration(TIME_0900AM, DURATION_60_MINUTES), Arrays.asList(PERSON_B));
+
+    EventStore store = EventStore.open(journal);
+    long firstId = store.add(first);
+    for (int i = 0; i < 10; i++) {
+      store.update(firstId, i % 2 == 0 ? second : first);
+    }
+    long deletedId = store.add(second);
+    store.delete(deletedId);
+
+    EventStore restored = EventStore.open(journal);
+    Assert.assertEquals(store.getEvents(), restored.getEvents());
+    // One line for the event, and one keeping the deleted event's id from being reused.
+    Assert.assertEquals(2, Files.readAllLines(journal, StandardCharsets.UTF_8).size());
+    Assert.assertEquals(deletedId + 1, restored.add(first));
+    Assert.assertEquals(restored.getEvents(), EventStore.open(journal).getEvents());
+  }
+
+  @Test
+  public void addAllIsOneChange() throws IOException {
+    Path journal = folder.getRoot().toPath().resolve("events.ndjson");
+    EventStore store = EventStore.open(journal);
+    List<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_60_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0900AM, DURATION_60_MINUTES),
+            Arrays.asList(PERSON_A, PERSON_B)));
+
+    long version = store.getVersion();
+    long firstId = store.addAll(events);
+
+    Assert.assertEquals(version + 2, store.getVersion());
+    Assert.assertEquals(events.get(1), store.get(firstId + 1));
+    Assert.assertEquals(EventIndex.of(events).getBusyTimes(PERSON_A),
+        store.getIndex().getBusyTimes(PERSON_A));
+    Assert.assertEquals(store.getEvents(), EventStore.open(journal).getEvents());
+  }
+
+  @Test
+  public void importIcsIsJournaled() throws IOException {
+    Path ics = folder.newFile().toPath();
+    Files.write(ics, Arrays.asList("BEGIN:VEVENT", "DTSTART:20200101T080000",
+        "DTEND:20200101T090000", "ATTENDEE:mailto:a@example.com", "END:VEVENT"),
+        StandardCharsets.UTF_8);
+    Path journal = folder.getRoot().toPath().resolve("events.ndjson");
+    EventStore store = EventStore.open(journal);
+
+    store.importIcs(Arrays.asList(ics));
+
+    Assert.assertEquals(1, store.getEvents().size());
+    Assert.assertEquals(TimeRangeSet.of(TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false)),
+        store.getIndex().getBusyTimes("a@example.com"));
+    Assert.assertEquals(store.getEvents(), EventStore.open(journal).getEvents());
+  }
+}
@@ -0,0 +1,173 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class HorizonMeetingQueryTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+
+  private static final long DAY = HorizonRange.MINUTES_PER_DAY;
+  private static final long MONDAY = 18323 * DAY;
+
+  private final HorizonMeetingQuery query = new HorizonMeetingQuery();
+
+  @Test
+  public void eventSpanningDaysBlocksThemAll() {
+    // A is away from Monday noon to Wednesday noon, B has a meeting on Wednesday afternoon.
+    HorizonIndex index = HorizonIndex.builder()
+        .add(HorizonRange.fromStartEnd(MONDAY + 720, MONDAY + 2 * DAY + 720),
+            Arrays.asList(PERSON_A))
+        .add(HorizonRange.fromStartDuration(MONDAY + 2 * DAY + 780, 60), Arrays.asList(PERSON_B))
+        .build();
+    HorizonRange week = HorizonRange.fromStartDuration(MONDAY, 7 * DAY);
+
+    List<HorizonRange> actual = query.query(index, Arrays.asList(PERSON_A, PERSON_B), week, 60);
+    List<HorizonRange> expected = Arrays.asList(
+        HorizonRange.fromStartEnd(MONDAY, MONDAY + 720),
+        HorizonRange.fromStartEnd(MONDAY + 2 * DAY + 720, MONDAY + 2 * DAY + 780),
+        HorizonRange.fromStartEnd(MONDAY + 2 * DAY + 840, MONDAY + 7 * DAY));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void firstFreeSlotSkipsBusyDays() {
+    HorizonIndex index = HorizonIndex.builder()
+        .add(HorizonRange.fromStartDuration(MONDAY, 3 * DAY), Arrays.asList(PERSON_A))
+        .build();
+    HorizonRange week = HorizonRange.fromStartDuration(MONDAY, 7 * DAY);
+
+    HorizonRange actual = query.firstFreeSlot(index, Arrays.asList(PERSON_A), week, 60);
+
+    Assert.assertEquals(HorizonRange.fromStartDuration(MONDAY + 3 * DAY, 60), actual);
+  }
+
+  @Test
+  public void noSlotWhenWindowIsTooShort() {
+    HorizonIndex index = HorizonIndex.builder().build();
+    HorizonRange window = HorizonRange.fromStartDuration(MONDAY, 30);
+
+    Assert.assertNull(query.firstFreeSlot(index, Arrays.asList(PERSON_A), window, 60));
+  }
+
+  @Test
+  public void firstFreeSlotMergesAttendees() {
+    // A's and B's meetings overlap and leave only a 30 minute gap before 13:00.
+    HorizonIndex index = HorizonIndex.builder()
+        .add(HorizonRange.fromStartEnd(MONDAY, MONDAY + 600), Arrays.asList(PERSON_A))
+        .add(HorizonRange.fromStartEnd(MONDAY + 540, MONDAY + 720), Arrays.asList(PERSON_B))
+        .add(HorizonRange.fromStartEnd(MONDAY + 750, MONDAY + 780), Arrays.asList(PERSON_A))
+        .build();
+    HorizonRange day = HorizonRange.ofDay(MONDAY / DAY);
+
+    HorizonRange actual =
+        query.firstFreeSlot(index, Arrays.asList(PERSON_A, PERSON_B), day, 60);
+
+    Assert.assertEquals(HorizonRange.fromStartDuration(MONDAY + 780, 60), actual);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void firstFreeSlotRejectsEmptyDuration() {
+    query.firstFreeSlot(HorizonIndex.builder().build(), Arrays.asList(PERSON_A),
+        HorizonRange.ofDay(MONDAY / DAY), 0);
+  }
+
+  @Test
+  public void matchesFindMeetingQueryOnOneDay() {
+    Random random = new Random(42);
+    FindMeetingQuery reference = new FindMeetingQuery();
+    String[] people = {"A", "B", "C", "D"};
+
+    for (int round = 0; round < 200; round++) {
+      List<Event> events = new ArrayList<>();
+      for (int i = random.nextInt(20); i > 0; i--) {
+        int start = random.nextInt(TimeRange.END_OF_DAY);
+        int end = start + 1 + random.nextInt(TimeRange.END_OF_DAY + 1 - start);
+        events.add(new Event("Event " + i, TimeRange.fromStartEnd(start, end, false),
+            Arrays.asList(people[random.nextInt(people.length)])));
+      }
+      Collection<String> attendees = Arrays.asList(people).subList(0, 1 + random.nextInt(4));
+      int duration = 1 + random.nextInt(120);
+
+      List<HorizonRange> expected = new ArrayList<>();
+      for (TimeRange range :
+          reference.query(events, new MeetingRequest(attendees, duration))) {
+        expected.add(HorizonRange.onDay(18323, range));
+      }
+      HorizonIndex index = HorizonIndex.builder().addDay(18323, events).build();
+
+      Assert.assertEquals(
+          expected, query.query(index, attendees, HorizonRange.ofDay(18323), duration));
+    }
+  }
+
+  @Test
+  public void manyEventsOverAYear() {
+    // Compare against a plain scan of every event on a large, unsorted calendar.
+    Random random = new Random(7);
+    HorizonIndex.Builder builder = HorizonIndex.builder();
+    List<HorizonRange> events = new ArrayList<>();
+    for (int i = 0; i < 50000; i++) {
+      HorizonRange when = HorizonRange.fromStartDuration(
+          MONDAY + (long) (random.nextDouble() * 365 * DAY), 15 + random.nextInt(180));
+      events.add(when);
+      builder.add(when, Arrays.asList(random.nextBoolean() ? PERSON_A : PERSON_B));
+    }
+    HorizonIndex index = builder.build();
+
+    for (int round = 0; round < 20; round++) {
+      HorizonRange window = HorizonRange.fromStartDuration(
+          MONDAY + random.nextInt(360) * DAY + random.nextInt((int) DAY), 7 * DAY);
+      List<HorizonRange> overlapping = new ArrayList<>();
+      for (HorizonRange event : events) {
+        if (event.overlaps(window)) {
+          overlapping.add(event);
+        }
+      }
+      Collections.sort(overlapping, HorizonRange.ORDER_BY_START);
+
+      List<HorizonRange> expected = new ArrayList<>();
+      long free = window.start();
+      for (HorizonRange event : overlapping) {
+        if (event.start() - free >= 30) {
+          expected.add(HorizonRange.fromStartEnd(free, event.start()));
+        }
+        free = Math.max(free, event.end());
+      }
+      if (window.end() - free >= 30) {
+        expected.add(HorizonRange.fromStartEnd(free, window.end()));
+      }
+
+      Assert.assertEquals(
+          expected, query.query(index, Arrays.asList(PERSON_A, PERSON_B), window, 30));
+      Assert.assertEquals(
+          expected.isEmpty() ? null : HorizonRange.fromStartDuration(expected.get(0).start(), 30),
+          query.firstFreeSlot(index, Arrays.asList(PERSON_A, PERSON_B), window, 30));
+    }
+  }
+}
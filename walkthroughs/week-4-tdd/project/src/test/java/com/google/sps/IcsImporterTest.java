@@ -0,0 +1,144 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class IcsImporterTest {
+  private static final String PERSON_A = "a@example.com";
+  private static final String PERSON_B = "b@example.com";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final IcsImporter importer = new IcsImporter();
+
+  @Test
+  public void readsEvents() throws IOException {
+    List<Event> actual = read(
+        "BEGIN:VCALENDAR",
+        "BEGIN:VEVENT",
+        "SUMMARY:Team sync\\, weekly",
+        "DTSTART;TZID=Europe/Zurich:20200102T093000",
+        "DTEND;TZID=Europe/Zurich:20200102T100000",
+        "ATTENDEE;CN=\"Doe: Jane\";ROLE=REQ-PARTICIPANT:mailto:a@exa",
+        " mple.com",
+        "ATTENDEE:MAILTO:b@example.com",
+        // An alarm's attendee is who gets reminded, not someone at the event.
+        "BEGIN:VALARM",
+        "ATTENDEE:mailto:c@example.com",
+        "END:VALARM",
+        "END:VEVENT",
+        "BEGIN:VEVENT",
+        "SUMMARY:Offsite",
+        "DTSTART;VALUE=DATE:20200103",
+        "ATTENDEE:mailto:b@example.com",
+        "END:VEVENT",
+        "BEGIN:VEVENT",
+        "SUMMARY:Late call",
+        "DTSTART:20200103T233000Z",
+        "DURATION:PT1H",
+        "END:VEVENT",
+        "END:VCALENDAR");
+
+    List<Event> expected = Arrays.asList(
+        new Event("Team sync, weekly", TimeRange.fromStartEnd(570, 600, false),
+            Arrays.asList(PERSON_A, PERSON_B)),
+        new Event("Offsite", TimeRange.WHOLE_DAY, Arrays.asList(PERSON_B)),
+        new Event("Late call", TimeRange.fromStartEnd(1410, TimeRange.END_OF_DAY, true),
+            Collections.emptyList()));
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void skipsUnreadableEvents() throws IOException {
+    List<Event> actual = read(
+        "BEGIN:VEVENT",
+        "SUMMARY:No start",
+        "END:VEVENT",
+        "BEGIN:VEVENT",
+        "DTSTART:20201340T090000",
+        "END:VEVENT",
+        "BEGIN:VEVENT",
+        "DTSTART:20200101T090000",
+        "DTEND:20200101T091500",
+        "END:VEVENT");
+
+    Assert.assertEquals(Arrays.asList(new Event("",
+        TimeRange.fromStartEnd(540, 555, false), Collections.emptyList())), actual);
+    Assert.assertEquals(2, importer.getSkipped());
+  }
+
+  @Test
+  public void readAllSharesAttendeeStringsAcrossFiles() throws IOException {
+    Path first = folder.newFile().toPath();
+    Path second = folder.newFile().toPath();
+    Files.write(first, Arrays.asList("BEGIN:VEVENT", "DTSTART:20200101T090000",
+        "DTEND:20200101T100000", "ATTENDEE:mailto:a@example.com", "END:VEVENT"),
+        StandardCharsets.UTF_8);
+    Files.write(second, Arrays.asList("BEGIN:VEVENT", "DTSTART:20200101T110000",
+        "DTEND:20200101T120000", "ATTENDEE:mailto:a@example.com", "END:VEVENT"),
+        StandardCharsets.UTF_8);
+
+    List<Event> events = importer.readAll(Arrays.asList(first, second));
+
+    Assert.assertEquals(2, events.size());
+    Assert.assertEquals(TimeRange.fromStartEnd(540, 600, false), events.get(0).getWhen());
+    Assert.assertEquals(TimeRange.fromStartEnd(660, 720, false), events.get(1).getWhen());
+    Assert.assertSame(events.get(0).getAttendees().iterator().next(),
+        events.get(1).getAttendees().iterator().next());
+  }
+
+  @Test
+  public void readAllHandsOnEventsInChunks() throws IOException {
+    Path path = folder.newFile().toPath();
+    List<String> lines = new ArrayList<>();
+    for (int hour = 0; hour < 5; hour++) {
+      lines.addAll(Arrays.asList("BEGIN:VEVENT", String.format("DTSTART:20200101T%02d0000", hour),
+          "DURATION:PT30M", "END:VEVENT"));
+    }
+    Files.write(path, lines, StandardCharsets.UTF_8);
+
+    List<Integer> chunkSizes = new ArrayList<>();
+    List<Event> events = new ArrayList<>();
+    importer.readAll(Arrays.asList(path), 2, chunk -> {
+      chunkSizes.add(chunk.size());
+      events.addAll(chunk);
+    });
+
+    Assert.assertEquals(Arrays.asList(2, 2, 1), chunkSizes);
+    Assert.assertEquals(importer.read(path), events);
+  }
+
+  private List<Event> read(String... lines) throws IOException {
+    return importer.read(new BufferedReader(new StringReader(String.join("\r\n", lines))));
+  }
+}
@@ -0,0 +1,113 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class MappedCalendarTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void matchesFindMeetingQueryOnRandomCalendars() throws IOException {
+    Random random = new Random(11);
+    FindMeetingQuery reference = new FindMeetingQuery();
+    // Includes names that sort differently as UTF-16 and as UTF-8 bytes.
+    String[] people = {"A", "B", "C", "Ä", "ﬁ", "😀", "Zoë", "b"};
+
+    for (int round = 0; round < 100; round++) {
+      List<Event> events = new ArrayList<>();
+      for (int i = random.nextInt(20); i > 0; i--) {
+        int start = random.nextInt(TimeRange.END_OF_DAY);
+        int end = start + 1 + random.nextInt(TimeRange.END_OF_DAY + 1 - start);
+        events.add(new Event("Event " + i, TimeRange.fromStartEnd(start, end, false),
+            Arrays.asList(people[random.nextInt(people.length)])));
+      }
+      EventIndex index = EventIndex.of(events);
+      Path path = folder.newFile().toPath();
+      MappedCalendar.write(path, index);
+      MappedCalendar calendar = MappedCalendar.open(path);
+
+      Assert.assertEquals(index.getAttendees().size(), calendar.getAttendeeCount());
+      for (int j = 0; j < 5; j++) {
+        List<String> optionalAttendees = random.nextBoolean()
+            ? Arrays.asList(people[4 + random.nextInt(people.length - 4)])
+            : Collections.emptyList();
+        MeetingRequest request = new MeetingRequest(Arrays.asList(people).subList(0,
+            random.nextInt(4)), optionalAttendees, random.nextInt(300));
+        Assert.assertEquals(reference.query(index, request), calendar.query(request));
+      }
+    }
+  }
+
+  @Test
+  public void unknownAttendeesAreFree() throws IOException {
+    Path path = folder.newFile().toPath();
+    MappedCalendar.write(path, EventIndex.of(Collections.emptyList()));
+    MappedCalendar calendar = MappedCalendar.open(path);
+
+    Assert.assertEquals(Arrays.asList(TimeRange.WHOLE_DAY),
+        calendar.query(new MeetingRequest(Arrays.asList("Person A"), 30)));
+  }
+
+  @Test
+  public void rewritingLeavesOpenCalendarsIntact() throws IOException {
+    Path path = folder.newFile().toPath();
+    MeetingRequest request = new MeetingRequest(Arrays.asList("Person A"), 30);
+    MappedCalendar.write(path, EventIndex.of(Arrays.asList(new Event("Event 1",
+        TimeRange.fromStartEnd(0, 600, false), Arrays.asList("Person A")))));
+    MappedCalendar old = MappedCalendar.open(path);
+
+    MappedCalendar.write(path, EventIndex.of(Collections.emptyList()));
+
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(600, TimeRange.END_OF_DAY, true)),
+        old.query(request));
+    Assert.assertEquals(Arrays.asList(TimeRange.WHOLE_DAY),
+        MappedCalendar.open(path).query(request));
+  }
+
+  @Test
+  public void namesWithUnpairedSurrogatesKeepTheirIntervals() throws IOException {
+    // "\ud800" has no UTF-8 form, so it is stored as "?" and can't be decoded back.
+    String attendee = "Person \ud800";
+    Path path = folder.newFile().toPath();
+    MappedCalendar.write(path, EventIndex.of(Arrays.asList(new Event("Event 1",
+        TimeRange.fromStartEnd(0, 600, false), Arrays.asList(attendee)))));
+
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(600, TimeRange.END_OF_DAY, true)),
+        MappedCalendar.open(path).query(new MeetingRequest(Arrays.asList(attendee), 30)));
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsOtherFiles() throws IOException {
+    Path path = folder.newFile().toPath();
+    Files.write(path, "not a calendar, just some text".getBytes("UTF-8"));
+    MappedCalendar.open(path);
+  }
+}
@@ -0,0 +1,92 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class MeetingQueryCacheTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int DURATION_30_MINUTES = 30;
+
+  private EventStore store;
+  private MeetingQueryCache cache;
+
+  @Before
+  public void setUp() throws IOException {
+    store = EventStore.inMemory(Collections.emptyList());
+    store.add(new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+        Arrays.asList(PERSON_A)));
+    cache = new MeetingQueryCache(new FindMeetingQuery(), 2);
+  }
+
+  @Test
+  public void attendeeOrderDoesntMatter() {
+    Collection<TimeRange> first = cache.query(store.getIndex(),
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES));
+    Collection<TimeRange> second = cache.query(store.getIndex(),
+        new MeetingRequest(Arrays.asList(PERSON_B, PERSON_A), DURATION_30_MINUTES));
+
+    Assert.assertSame(first, second);
+    Assert.assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void changeToOtherAttendeeKeepsEntry() throws IOException {
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    Collection<TimeRange> before = cache.query(store.getIndex(), request);
+
+    store.add(new Event("Event 2", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+        Arrays.asList(PERSON_C)));
+
+    Assert.assertSame(before, cache.query(store.getIndex(), request));
+  }
+
+  @Test
+  public void changeToAttendeeInvalidatesEntry() throws IOException {
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES);
+    Collection<TimeRange> before = cache.query(store.getIndex(), request);
+
+    store.add(new Event("Event 2", TimeRange.fromStartDuration(0, DURATION_30_MINUTES),
+        Arrays.asList(PERSON_B)));
+    Collection<TimeRange> after = cache.query(store.getIndex(), request);
+
+    Assert.assertNotEquals(before, after);
+    Assert.assertEquals(new FindMeetingQuery().query(store.getIndex(), request), after);
+  }
+
+  @Test
+  public void sizeIsBounded() {
+    for (int duration = 1; duration <= 5; duration++) {
+      cache.query(store.getIndex(), new MeetingRequest(Arrays.asList(PERSON_A), duration));
+    }
+
+    Assert.assertEquals(2, cache.size());
+  }
+}
@@ -0,0 +1,93 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class ShardedMapTest {
+
+  @Test
+  public void withLeavesOriginalUnchanged() {
+    Map<String, Integer> entries = new HashMap<>();
+    entries.put("A", 1);
+    entries.put("B", 2);
+    ShardedMap<Integer> original = ShardedMap.of(entries);
+
+    Map<String, Integer> changes = new HashMap<>();
+    changes.put("A", null);
+    changes.put("C", 3);
+    ShardedMap<Integer> updated = original.with(changes);
+
+    Assert.assertEquals(Integer.valueOf(1), original.get("A"));
+    Assert.assertNull(original.get("C"));
+    Assert.assertEquals(2, original.size());
+
+    Assert.assertNull(updated.get("A"));
+    Assert.assertEquals(Integer.valueOf(2), updated.get("B"));
+    Assert.assertEquals(Integer.valueOf(3), updated.get("C"));
+    Assert.assertEquals(new HashSet<>(Arrays.asList("B", "C")), updated.keySet());
+    Assert.assertEquals(2, updated.size());
+  }
+
+  @Test
+  public void removingMissingKeyKeepsSize() {
+    ShardedMap<Integer> map = ShardedMap.of(Collections.singletonMap("A", 1));
+
+    ShardedMap<Integer> updated = map.with(Collections.singletonMap("B", null));
+
+    Assert.assertEquals(1, updated.size());
+    Assert.assertEquals(Collections.singleton("A"), updated.keySet());
+  }
+
+  @Test
+  public void matchesHashMapOnRandomUpdates() {
+    Random random = new Random(7);
+    Map<String, Integer> expected = new HashMap<>();
+    ShardedMap<Integer> actual = ShardedMap.of(expected);
+
+    for (int round = 0; round < 200; round++) {
+      Map<String, Integer> changes = new HashMap<>();
+      for (int i = random.nextInt(20); i > 0; i--) {
+        String key = "Person " + random.nextInt(1000);
+        changes.put(key, random.nextBoolean() ? null : random.nextInt());
+      }
+      for (Map.Entry<String, Integer> change : changes.entrySet()) {
+        if (change.getValue() == null) {
+          expected.remove(change.getKey());
+        } else {
+          expected.put(change.getKey(), change.getValue());
+        }
+      }
+      actual = actual.with(changes);
+
+      Assert.assertEquals(expected.size(), actual.size());
+      Assert.assertEquals(expected.keySet(), actual.keySet());
+      for (String key : expected.keySet()) {
+        Assert.assertEquals(expected.get(key), actual.get(key));
+      }
+    }
+  }
+}
@@ -0,0 +1,70 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class TableMeetingQueryTest {
+  private final TableMeetingQuery query = new TableMeetingQuery();
+
+  @Test
+  public void tableKeepsEveryEvent() {
+    List<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(600, 30), Arrays.asList("A", "B")),
+        new Event("Event 2", TimeRange.fromStartDuration(480, 60), Arrays.asList("B")),
+        new Event("Event 3", TimeRange.fromStartDuration(540, 0), Arrays.asList()));
+
+    EventTable table = EventTable.of(events);
+    List<Event> actual = new ArrayList<>();
+    for (int row = 0; row < table.size(); row++) {
+      actual.add(table.getEvent(row));
+    }
+
+    Assert.assertEquals(new HashSet<>(events), new HashSet<>(actual));
+  }
+
+  @Test
+  public void matchesFindMeetingQueryOnRandomCalendars() {
+    Random random = new Random(42);
+    FindMeetingQuery reference = new FindMeetingQuery();
+    String[] people = {"A", "B", "C", "D", "E", "F"};
+
+    for (int round = 0; round < 500; round++) {
+      List<Event> events = new ArrayList<>();
+      for (int i = random.nextInt(20); i > 0; i--) {
+        int start = random.nextInt(TimeRange.END_OF_DAY);
+        int end = start + random.nextInt(TimeRange.END_OF_DAY + 1 - start);
+        events.add(new Event("Event " + i, TimeRange.fromStartEnd(start, end, false),
+            Arrays.asList(people[random.nextInt(people.length)],
+                people[random.nextInt(people.length)])));
+      }
+      int mandatory = random.nextInt(people.length);
+      MeetingRequest request = new MeetingRequest(Arrays.asList(people).subList(0, mandatory),
+          Arrays.asList(people).subList(mandatory, people.length), 1 + random.nextInt(120));
+
+      Assert.assertEquals(reference.query(events, request), query.query(events, request));
+    }
+  }
+}
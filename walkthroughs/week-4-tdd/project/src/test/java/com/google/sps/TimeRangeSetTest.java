@@ -0,0 +1,124 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class TimeRangeSetTest {
+  private static final TimeRange RANGE_A = TimeRange.fromStartEnd(60, 120, false);
+  private static final TimeRange RANGE_B = TimeRange.fromStartEnd(90, 180, false);
+  private static final TimeRange RANGE_C = TimeRange.fromStartEnd(180, 240, false);
+
+  @Test
+  public void ofMergesOverlappingAndTouchingRanges() {
+    TimeRangeSet set =
+        TimeRangeSet.of(RANGE_C, RANGE_A, RANGE_B, TimeRange.fromStartDuration(300, 0));
+
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(60, 240, false)), set.toList());
+    Assert.assertEquals(180, set.duration());
+  }
+
+  @Test
+  public void setOperations() {
+    TimeRangeSet a = TimeRangeSet.of(RANGE_A, RANGE_C);
+    TimeRangeSet b = TimeRangeSet.of(RANGE_B);
+
+    Assert.assertEquals(TimeRangeSet.of(TimeRange.fromStartEnd(60, 240, false)), a.union(b));
+    Assert.assertEquals(TimeRangeSet.of(TimeRange.fromStartEnd(90, 120, false)), a.intersect(b));
+    Assert.assertEquals(TimeRangeSet.of(TimeRange.fromStartEnd(60, 90, false), RANGE_C),
+        a.subtract(b));
+    Assert.assertEquals(TimeRangeSet.of(TimeRange.fromStartEnd(0, 60, false),
+        TimeRange.fromStartEnd(120, 180, false),
+        TimeRange.fromStartEnd(240, TimeRange.END_OF_DAY, true)), a.complement());
+  }
+
+  @Test
+  public void containsRespectsExclusiveEnds() {
+    TimeRangeSet set = TimeRangeSet.of(RANGE_A, RANGE_C);
+
+    Assert.assertTrue(set.contains(60));
+    Assert.assertFalse(set.contains(120));
+    Assert.assertFalse(set.contains(59));
+    Assert.assertTrue(set.contains(TimeRange.fromStartEnd(180, 240, false)));
+    Assert.assertFalse(set.contains(TimeRange.fromStartEnd(100, 200, false)));
+    Assert.assertFalse(set.contains(TimeRange.fromStartEnd(120, 150, false)));
+  }
+
+  @Test
+  public void gapsAtLeastMatchesFindMeetingQuery() {
+    Random random = new Random(5);
+    FindMeetingQuery reference = new FindMeetingQuery();
+
+    for (int round = 0; round < 200; round++) {
+      List<Event> events = new ArrayList<>();
+      TimeRangeSet busy = TimeRangeSet.EMPTY;
+      for (int i = random.nextInt(10); i > 0; i--) {
+        int start = random.nextInt(TimeRange.END_OF_DAY);
+        TimeRange when = TimeRange.fromStartEnd(
+            start, start + random.nextInt(TimeRange.END_OF_DAY + 1 - start), false);
+        events.add(new Event("Event " + i, when, Arrays.asList("Person A")));
+        busy = busy.union(TimeRangeSet.of(when));
+      }
+      int duration = 1 + random.nextInt(300);
+
+      Assert.assertEquals(
+          reference.query(events, new MeetingRequest(Arrays.asList("Person A"), duration)),
+          busy.gapsAtLeast(duration));
+    }
+  }
+
+  @Test
+  public void operationsMatchMinuteByMinuteSets() {
+    Random random = new Random(9);
+    for (int round = 0; round < 200; round++) {
+      TimeRangeSet a = randomSet(random);
+      TimeRangeSet b = randomSet(random);
+      TimeRangeSet union = a.union(b);
+      TimeRangeSet intersection = a.intersect(b);
+      TimeRangeSet difference = a.subtract(b);
+      TimeRangeSet complement = a.complement();
+
+      for (int minute = 0; minute < TimeRange.WHOLE_DAY.duration(); minute++) {
+        boolean inA = a.contains(minute);
+        boolean inB = b.contains(minute);
+        Assert.assertEquals(inA || inB, union.contains(minute));
+        Assert.assertEquals(inA && inB, intersection.contains(minute));
+        Assert.assertEquals(inA && !inB, difference.contains(minute));
+        Assert.assertEquals(!inA, complement.contains(minute));
+      }
+      // Results are normalized, so the same minutes always give an equal set.
+      Assert.assertEquals(TimeRangeSet.of(union.toList()), union);
+      Assert.assertEquals(a, a.subtract(b).union(a.intersect(b)));
+    }
+  }
+
+  private static TimeRangeSet randomSet(Random random) {
+    List<TimeRange> ranges = new ArrayList<>();
+    for (int i = random.nextInt(8); i > 0; i--) {
+      int start = random.nextInt(TimeRange.END_OF_DAY);
+      ranges.add(TimeRange.fromStartEnd(start, start + random.nextInt(120), false));
+    }
+    return TimeRangeSet.of(ranges);
+  }
+}